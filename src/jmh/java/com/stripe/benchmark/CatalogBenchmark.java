@@ -0,0 +1,94 @@
+package com.stripe.benchmark;
+
+import com.stripe.repository.Catalog;
+import com.stripe.repository.CatalogItem;
+import com.stripe.repository.HeapCatalog;
+import com.stripe.repository.MappedCatalog;
+import com.stripe.repository.ProductDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Product lookups: ProductDAO.getProduct, which copies the entry into a CatalogItem, against
+ * reading the price columns by index, for the heap and the memory-mapped catalog.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CatalogBenchmark {
+
+    @Param({"3", "10000"})
+    public int catalogSize;
+
+    @Param({"heap", "mapped"})
+    public String kind;
+
+    private Catalog catalog;
+    private String[] ids;
+    private int next;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<CatalogItem> items = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            items.add(new CatalogItem("p" + i, "Product " + i, 100 + i, "usd"));
+        }
+
+        if ("mapped".equals(kind)) {
+            file = Files.createTempFile("catalog", ".bin");
+            MappedCatalog.write(items, file);
+            catalog = MappedCatalog.open(file);
+        } else {
+            catalog = new HeapCatalog(items);
+        }
+        ProductDAO.swap(catalog);
+
+        ids = new String[1024];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "p" + (i * 31 % catalogSize);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public long getProduct() {
+        return ProductDAO.getProduct(nextId()).getUnitAmount();
+    }
+
+    @Benchmark
+    public long indexOfAndPrice() {
+        return catalog.unitAmount(catalog.indexOf(nextId()));
+    }
+
+    private String nextId() {
+        next = (next + 1) & (ids.length - 1);
+        return ids[next];
+    }
+}
@@ -0,0 +1,107 @@
+package com.stripe.benchmark;
+
+import com.stripe.param.checkout.SessionCreateParams;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.ProductData;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.Recurring;
+import com.stripe.repository.CatalogItem;
+import com.stripe.repository.HeapCatalog;
+import com.stripe.repository.ProductDAO;
+import com.stripe.service.LineItemCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkout session params: building every line item per request, as addLineItem did, against
+ * the prebuilt items of LineItemCache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LineItemBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int cartSize;
+
+    @Param({"false", "true"})
+    public boolean recurring;
+
+    private LineItemCache lineItemCache;
+    private String[] ids;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        List<CatalogItem> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(new CatalogItem("p" + i, "Product " + i, 100 + i, "usd"));
+        }
+        ProductDAO.swap(new HeapCatalog(items));
+        lineItemCache = new LineItemCache();
+
+        ids = new String[cartSize];
+        names = new String[cartSize];
+        for (int i = 0; i < cartSize; i++) {
+            ids[i] = "p" + i;
+            names[i] = "Product " + i;
+        }
+    }
+
+    @Benchmark
+    public List<SessionCreateParams.LineItem> rebuiltLineItems() {
+        List<SessionCreateParams.LineItem> lineItems = new ArrayList<>(cartSize);
+        for (int i = 0; i < cartSize; i++) {
+            PriceData.Builder priceData = PriceData.builder()
+                    .setProductData(ProductData.builder()
+                            .putMetadata("app_id", ids[i])
+                            .setName(names[i])
+                            .build())
+                    .setCurrency(ProductDAO.getProduct(ids[i]).getCurrency())
+                    .setUnitAmount(ProductDAO.getProduct(ids[i]).getUnitAmount());
+            if (recurring) {
+                priceData.setRecurring(Recurring.builder().setInterval(Recurring.Interval.MONTH).build());
+            }
+            lineItems.add(SessionCreateParams.LineItem.builder()
+                    .setQuantity(1L)
+                    .setPriceData(priceData.build())
+                    .build());
+        }
+        return lineItems;
+    }
+
+    @Benchmark
+    public List<SessionCreateParams.LineItem> cachedLineItems() {
+        List<SessionCreateParams.LineItem> lineItems = new ArrayList<>(cartSize);
+        for (int i = 0; i < cartSize; i++) {
+            lineItems.add(lineItemCache.get(ids[i], names[i], 1, recurring));
+        }
+        return lineItems;
+    }
+
+    @Benchmark
+    public SessionCreateParams sessionParams() {
+        return SessionCreateParams.builder()
+                .setMode(recurring ? SessionCreateParams.Mode.SUBSCRIPTION : SessionCreateParams.Mode.PAYMENT)
+                .setCustomer("cus_123")
+                .setSuccessUrl("http://localhost:5174/success?session_id={CHECKOUT_SESSION_ID}")
+                .setCancelUrl("http://localhost:5174/failure")
+                .addAllLineItem(cachedLineItems())
+                .build();
+    }
+}
@@ -0,0 +1,98 @@
+package com.stripe.benchmark;
+
+import com.stripe.pricing.CartItem;
+import com.stripe.pricing.CouponTerms;
+import com.stripe.pricing.PricingEngine;
+import com.stripe.pricing.Quote;
+import com.stripe.repository.Catalog;
+import com.stripe.repository.CatalogItem;
+import com.stripe.repository.HeapCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cart totals: the original float-based calculateOrderAmount against the pricing engine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PricingBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int cartSize;
+
+    private Catalog catalog;
+    private List<CartItem> cart;
+    private String[] ids;
+    private long[] quantities;
+    private Map<String, BigDecimal> legacyPrices;
+    private CouponTerms coupon;
+
+    @Setup
+    public void setUp() {
+        List<CatalogItem> items = new ArrayList<>();
+        legacyPrices = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(new CatalogItem("p" + i, "Product " + i, 100 + i, "usd"));
+            legacyPrices.put("p" + i, BigDecimal.valueOf(100 + i));
+        }
+        catalog = new HeapCatalog(items);
+
+        cart = new ArrayList<>(cartSize);
+        ids = new String[cartSize];
+        quantities = new long[cartSize];
+        for (int i = 0; i < cartSize; i++) {
+            ids[i] = "p" + (i * 7 % 1000);
+            quantities[i] = i % 3 + 1;
+            cart.add(new CartItem(ids[i], null, quantities[i]));
+        }
+        coupon = CouponTerms.percentOff(new BigDecimal("12.5"));
+    }
+
+    /**
+     * The original implementation: each unit price went through BigDecimal and float, and the
+     * total was returned as a String for the caller to parse back.
+     */
+    @Benchmark
+    public long legacyFloatTotal() {
+        long total = 0L;
+        for (CartItem item : cart) {
+            total += (long) legacyPrices.get(item.getId()).floatValue();
+        }
+        return Long.parseLong(String.valueOf(total));
+    }
+
+    @Benchmark
+    public Quote quote() {
+        return PricingEngine.quote(catalog, cart, null);
+    }
+
+    @Benchmark
+    public Quote quoteWithCoupon() {
+        return PricingEngine.quote(catalog, cart, coupon);
+    }
+
+    @Benchmark
+    public long arrayTotal() {
+        return PricingEngine.total(catalog, ids, quantities, cartSize, "usd");
+    }
+}
@@ -0,0 +1,105 @@
+package com.stripe.benchmark;
+
+import com.stripe.model.Invoice;
+import com.stripe.service.InvoiceService;
+import com.stripe.service.SubscriptionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping Stripe results to response rows: the original subscription mapping, which created a
+ * SimpleDateFormat per date field, against the shared DateTimeFormatter, plus the invoice rows.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResponseMappingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    private String[] subscriptionIds;
+    private long[] startDates;
+    private long[] periodEnds;
+    private Long[] trialEnds;
+    private List<Invoice> invoices;
+
+    @Setup
+    public void setUp() {
+        long now = System.currentTimeMillis() / 1000;
+        subscriptionIds = new String[rows];
+        startDates = new long[rows];
+        periodEnds = new long[rows];
+        trialEnds = new Long[rows];
+        invoices = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            subscriptionIds[i] = "sub_" + i;
+            startDates[i] = now - 86_400L * i;
+            periodEnds[i] = now + 86_400L * (30 - i % 30);
+            trialEnds[i] = i % 2 == 0 ? now + 86_400L * 7 : null;
+
+            Invoice invoice = new Invoice();
+            invoice.setNumber("INV-" + i);
+            invoice.setTotal(1000L + i);
+            invoice.setInvoicePdf("https://pay.stripe.com/invoice/" + i + "/pdf");
+            invoices.add(invoice);
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, String>> legacySubscriptionRows() {
+        List<Map<String, String>> response = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            HashMap<String, String> subscriptionData = new HashMap<>();
+            subscriptionData.put("appProductId", "shoe");
+            subscriptionData.put("subscriptionId", subscriptionIds[i]);
+            subscriptionData.put("subscribedOn", new SimpleDateFormat("dd/MM/yyyy").format(new Date(startDates[i] * 1000)));
+            subscriptionData.put("nextPaymentDate", new SimpleDateFormat("dd/MM/yyyy").format(new Date(periodEnds[i] * 1000)));
+            subscriptionData.put("price", "2000");
+            if (trialEnds[i] != null && new Date(trialEnds[i] * 1000).after(new Date()))
+                subscriptionData.put("trialEndsOn", new SimpleDateFormat("dd/MM/yyyy").format(new Date(trialEnds[i] * 1000)));
+            response.add(subscriptionData);
+        }
+        return response;
+    }
+
+    @Benchmark
+    public List<Map<String, String>> subscriptionRows() {
+        long now = System.currentTimeMillis();
+        List<Map<String, String>> response = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            response.add(SubscriptionService.toRow(subscriptionIds[i], startDates[i], periodEnds[i], trialEnds[i],
+                    "2000", "shoe", now));
+        }
+        return response;
+    }
+
+    @Benchmark
+    public List<Map<String, String>> invoiceRows() {
+        List<Map<String, String>> response = new ArrayList<>(rows);
+        for (Invoice invoice : invoices) {
+            response.add(InvoiceService.toRow(invoice));
+        }
+        return response;
+    }
+}
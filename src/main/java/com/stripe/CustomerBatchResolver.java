@@ -0,0 +1,202 @@
+package com.stripe;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.model.CustomerSearchResult;
+import com.stripe.param.CustomerSearchParams;
+import com.stripe.utils.SearchQueries;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Finds customers by email, combining lookups that arrive within a short window into one
+ * {@code Customer.search} with up to {@code max-emails} OR-ed clauses (Stripe allows 10). The
+ * first caller of a batch waits out the window and then runs the search for everyone in it; a
+ * caller that fills the batch runs it right away, which also releases the first caller early.
+ */
+@Component
+public class CustomerBatchResolver {
+
+    // Stripe's limit on clauses in one search query
+    private static final int MAX_CLAUSES = 10;
+
+    // Results per search page; more than this only if emails have many customers each
+    private static final long PAGE_SIZE = 100L;
+
+    private static final class Batch {
+        final StripeAccount account;
+        // Normalized email -> the callers waiting for it
+        final Map<String, CompletableFuture<Customer>> waiters = new LinkedHashMap<>();
+
+        Batch(StripeAccount account) {
+            this.account = account;
+        }
+    }
+
+    private final long windowMs;
+    private final int maxEmails;
+    private final DistributionSummary batchSizes;
+
+    // Account id -> the batch still taking emails
+    private final Map<String, Batch> open = new HashMap<>();
+
+    public CustomerBatchResolver(@Value("${stripe.customer-batch.window-ms:5}") long windowMs,
+                                 @Value("${stripe.customer-batch.max-emails:10}") int maxEmails,
+                                 MeterRegistry meterRegistry) {
+        this.windowMs = windowMs;
+        this.maxEmails = Math.max(1, Math.min(MAX_CLAUSES, maxEmails));
+        this.batchSizes = DistributionSummary.builder("stripe.customer.search.batch.size")
+                .description("Emails looked up by one Customer.search")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the customer with this email, or null if there is none
+     */
+    public Customer find(StripeAccount account, String email) throws StripeException {
+        String key = normalize(email);
+        if (windowMs <= 0 || maxEmails == 1) {
+            return search(account, List.of(key)).get(key);
+        }
+
+        Batch batch;
+        CompletableFuture<Customer> result;
+        boolean first;
+        boolean full;
+        synchronized (open) {
+            batch = open.get(account.getId());
+            first = batch == null;
+            if (first) {
+                batch = new Batch(account);
+                open.put(account.getId(), batch);
+            }
+            result = batch.waiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+            full = batch.waiters.size() >= maxEmails;
+            if (full) {
+                open.remove(account.getId());
+            }
+        }
+
+        if (full) {
+            run(batch);
+        } else if (first) {
+            waitOutWindow(result);
+            boolean stillOpen;
+            synchronized (open) {
+                stillOpen = open.remove(account.getId(), batch);
+            }
+            // Otherwise a caller filled the batch in the meantime and runs it
+            if (stillOpen) {
+                run(batch);
+            }
+        }
+
+        return await(result);
+    }
+
+    /**
+     * Waits until the window is over, or less if a caller fills the batch and runs it.
+     */
+    private void waitOutWindow(CompletableFuture<Customer> result) {
+        try {
+            result.get(windowMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // The window is over, or the batch already ran and its failure is reported by await
+        } catch (InterruptedException e) {
+            // Run the batch anyway, the other callers are waiting for it
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Batch batch) {
+        // The batch is closed, nobody adds to it any more
+        Map<String, CompletableFuture<Customer>> waiters = batch.waiters;
+        batchSizes.record(waiters.size());
+        try {
+            Map<String, Customer> found = search(batch.account, waiters.keySet());
+            for (Map.Entry<String, CompletableFuture<Customer>> waiter : waiters.entrySet()) {
+                waiter.getValue().complete(found.get(waiter.getKey()));
+            }
+        } catch (StripeException | RuntimeException e) {
+            for (CompletableFuture<Customer> waiter : waiters.values()) {
+                waiter.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Looks up all emails with one search. Emails without a customer are missing from the result.
+     */
+    private static Map<String, Customer> search(StripeAccount account, Collection<String> emails) throws StripeException {
+        CustomerSearchResult result = Customer.search(CustomerSearchParams.builder()
+                .setQuery(query(emails))
+                .setLimit(PAGE_SIZE)
+                .build(), account.options());
+
+        Map<String, Customer> found = new HashMap<>();
+        for (Customer customer : result.getData()) {
+            if (customer.getEmail() != null) {
+                found.putIfAbsent(normalize(customer.getEmail()), customer);
+            }
+        }
+
+        // With more results than one page, a missing email may just be on a later page
+        if (Boolean.TRUE.equals(result.getHasMore()) && emails.size() > 1) {
+            for (String email : emails) {
+                if (!found.containsKey(email)) {
+                    Customer customer = search(account, List.of(email)).get(email);
+                    if (customer != null) {
+                        found.put(email, customer);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    static String query(Collection<String> emails) {
+        List<String> clauses = new ArrayList<>(emails.size());
+        for (String email : emails) {
+            // One unescaped quote would break the query of the whole batch
+            clauses.add("email:" + SearchQueries.literal(email));
+        }
+        return String.join(" OR ", clauses);
+    }
+
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Customer await(CompletableFuture<Customer> result) throws StripeException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for a batched customer search", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StripeException) {
+                throw (StripeException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -1,49 +1,77 @@
 package com.stripe;
 
+import com.stripe.account.StripeAccount;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Customer;
-import com.stripe.model.CustomerSearchResult;
 import com.stripe.param.CustomerCreateParams;
-import com.stripe.param.CustomerSearchParams;
+import com.stripe.utils.TtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+@Component
 public class CustomerUtil {
 
-    public static Customer findCustomerByEmail(String email) throws StripeException {
-        CustomerSearchParams params =
-                CustomerSearchParams
-                        .builder()
-                        .setQuery("email:'" + email + "'")
-                        .build();
+    // Account and email -> customer, so repeat buyers skip the Customer.search round-trip
+    private final TtlCache<String, Customer> customers;
 
-        CustomerSearchResult result = Customer.search(params);
+    // Cache misses for different emails that arrive together share one search
+    private final CustomerBatchResolver batchResolver;
 
-        return !result.getData().isEmpty() ? result.getData().get(0) : null;
+    public CustomerUtil(@Value("${stripe.customer-cache.ttl-seconds:600}") long ttlSeconds,
+                        @Value("${stripe.customer-cache.max-size:10000}") int maxSize,
+                        CustomerBatchResolver batchResolver) {
+        this.customers = new TtlCache<>(ttlSeconds, TimeUnit.SECONDS, maxSize);
+        this.batchResolver = batchResolver;
     }
 
-    public static Customer findOrCreateCustomer(String email, String name) throws StripeException {
-        CustomerSearchParams params =
-                CustomerSearchParams
-                        .builder()
-                        .setQuery("email:'" + email + "'")
-                        .build();
+    public Customer findCustomerByEmail(StripeAccount account, String email) throws StripeException {
+        return customers.get(cacheKey(account, email), key -> batchResolver.find(account, email));
+    }
 
-        CustomerSearchResult result = Customer.search(params);
+    public Customer findOrCreateCustomer(StripeAccount account, String email, String name) throws StripeException {
+        Customer customer = findCustomerByEmail(account, email);
 
-        Customer customer;
+        // If no existing customer was found, create a new record. Concurrent requests for the
+        // same email share this call, so a race no longer creates duplicate customers. The call
+        // may instead join another request's search that found nothing, so try again until a
+        // customer comes back.
+        while (customer == null) {
+            // The miss was already counted by the search above
+            customer = customers.load(cacheKey(account, email), key -> {
+                CustomerCreateParams customerCreateParams = CustomerCreateParams.builder()
+                        .setName(name)
+                        .setEmail(email)
+                        .build();
 
-        // If no existing customer was found, create a new record
-        if (result.getData().isEmpty()) {
+                return Customer.create(customerCreateParams, account.options());
+            });
+        }
 
-            CustomerCreateParams customerCreateParams = CustomerCreateParams.builder()
-                    .setName(name)
-                    .setEmail(email)
-                    .build();
+        return customer;
+    }
 
-            customer = Customer.create(customerCreateParams);
-        } else {
-            customer = result.getData().get(0);
+    public void evict(StripeAccount account, String email) {
+        if (email == null || email.isBlank()) {
+            return;
         }
+        customers.invalidate(cacheKey(account, email));
+    }
 
-        return customer;
+    public long cacheHits() {
+        return customers.hitCount();
+    }
+
+    public long cacheMisses() {
+        return customers.missCount();
+    }
+
+    private static String cacheKey(StripeAccount account, String email) {
+        if (email == null || email.isBlank()) {
+            throw new MissingEmailException();
+        }
+        return account.getId() + ':' + email.trim().toLowerCase(Locale.ROOT);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package com.stripe;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MissingEmailException extends RuntimeException {
+
+    public MissingEmailException() {
+        super("Customer email is missing");
+    }
+}
@@ -0,0 +1,61 @@
+package com.stripe.account;
+
+import com.stripe.net.RequestOptions;
+
+/**
+ * A Stripe account this instance serves. Every Stripe call carries the account's key in its own
+ * {@link RequestOptions}, so no request depends on the global {@code Stripe.apiKey}.
+ */
+public class StripeAccount {
+
+    private final String id;
+    private final String publicKey;
+    private final String secretKey;
+    private final String webhookSecret;
+    private final RequestOptions options;
+
+    public StripeAccount(String id, String publicKey, String secretKey, String webhookSecret) {
+        this.id = id;
+        this.publicKey = publicKey;
+        this.secretKey = secretKey;
+        this.webhookSecret = webhookSecret;
+        this.options = RequestOptions.builder().setApiKey(secretKey).build();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * @return the signing secret of this account's webhook endpoint, empty if none is configured
+     */
+    public String getWebhookSecret() {
+        return webhookSecret;
+    }
+
+    /**
+     * @return request options authenticating as this account
+     */
+    public RequestOptions options() {
+        return options;
+    }
+
+    /**
+     * @return request options authenticating as this account and carrying the idempotency key
+     */
+    public RequestOptions options(String idempotencyKey) {
+        return RequestOptions.builder()
+                .setApiKey(secretKey)
+                .setIdempotencyKey(idempotencyKey)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return "StripeAccount [id=" + id + "]";
+    }
+}
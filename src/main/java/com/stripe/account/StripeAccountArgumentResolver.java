@@ -0,0 +1,30 @@
+package com.stripe.account;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Lets handler methods declare a {@link StripeAccount} parameter, resolved from the account header.
+ */
+public class StripeAccountArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final StripeAccountRegistry registry;
+
+    public StripeAccountArgumentResolver(StripeAccountRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return StripeAccount.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        return registry.resolve(webRequest.getHeader(registry.getAccountHeader()));
+    }
+}
@@ -0,0 +1,29 @@
+package com.stripe.account;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Additional Stripe accounts, configured as {@code stripe.accounts.<id>.secret-key},
+ * {@code stripe.accounts.<id>.public-key} and {@code stripe.accounts.<id>.webhook-secret}. The account from {@code stripe.key.*} is always
+ * available under the id {@value StripeAccountRegistry#DEFAULT_ACCOUNT}.
+ */
+@Data
+@ConfigurationProperties(prefix = "stripe")
+public class StripeAccountProperties {
+
+    private Map<String, Keys> accounts = new LinkedHashMap<>();
+
+    // Request header that selects the account, requests without it use the default account
+    private String accountHeader = "X-Stripe-Tenant";
+
+    @Data
+    public static class Keys {
+        private String publicKey;
+        private String secretKey;
+        private String webhookSecret;
+    }
+}
@@ -0,0 +1,74 @@
+package com.stripe.account;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable registry of the Stripe accounts this instance serves, built once at startup.
+ */
+@Component
+@EnableConfigurationProperties(StripeAccountProperties.class)
+public class StripeAccountRegistry {
+
+    public static final String DEFAULT_ACCOUNT = "default";
+
+    private final Map<String, StripeAccount> accounts;
+
+    private final StripeAccount defaultAccount;
+
+    private final String accountHeader;
+
+    public StripeAccountRegistry(@Value("${stripe.key.public}") String publicKey,
+                                 @Value("${stripe.key.secret}") String secretKey,
+                                 @Value("${stripe.key.webhook:}") String webhookSecret,
+                                 StripeAccountProperties properties) {
+        Map<String, StripeAccount> accounts = new LinkedHashMap<>();
+
+        this.defaultAccount = new StripeAccount(DEFAULT_ACCOUNT, publicKey, secretKey, webhookSecret);
+        accounts.put(DEFAULT_ACCOUNT, defaultAccount);
+
+        properties.getAccounts().forEach((id, keys) -> {
+            if (keys.getSecretKey() == null || keys.getSecretKey().isEmpty()) {
+                throw new IllegalStateException("stripe.accounts." + id + ".secret-key is not set");
+            }
+            accounts.put(id, new StripeAccount(id, keys.getPublicKey(), keys.getSecretKey(),
+                    keys.getWebhookSecret() != null ? keys.getWebhookSecret() : ""));
+        });
+
+        this.accounts = Collections.unmodifiableMap(accounts);
+        this.accountHeader = properties.getAccountHeader();
+    }
+
+    /**
+     * @return the account with the given id, or the default account if no id is given
+     */
+    public StripeAccount resolve(String id) {
+        if (id == null || id.isEmpty()) {
+            return defaultAccount;
+        }
+
+        StripeAccount account = accounts.get(id);
+        if (account == null) {
+            throw new UnknownAccountException(id);
+        }
+        return account;
+    }
+
+    public StripeAccount getDefaultAccount() {
+        return defaultAccount;
+    }
+
+    public Collection<StripeAccount> getAccounts() {
+        return accounts.values();
+    }
+
+    public String getAccountHeader() {
+        return accountHeader;
+    }
+}
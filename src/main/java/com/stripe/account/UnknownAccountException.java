@@ -0,0 +1,12 @@
+package com.stripe.account;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownAccountException extends RuntimeException {
+
+    public UnknownAccountException(String id) {
+        super("Unknown Stripe account: " + id);
+    }
+}
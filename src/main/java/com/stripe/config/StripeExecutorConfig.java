@@ -0,0 +1,57 @@
+package com.stripe.config;
+
+import com.stripe.metrics.ContextPropagatingExecutorService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Both executors run tasks with the request context of the submitting thread, so Stripe calls
+ * made on them are attributed to the endpoint that fanned them out.
+ */
+@Configuration
+public class StripeExecutorConfig {
+
+    /**
+     * Bounded pool for blocking Stripe calls that are fanned out from a request. When the pool and
+     * its queue are full the submitting thread runs the call itself, which throttles the caller
+     * instead of failing the request.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "false", matchIfMissing = true)
+    public ExecutorService stripeExecutor(@Value("${stripe.executor.threads:32}") int threads,
+                                          @Value("${stripe.executor.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "stripe-io-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return new ContextPropagatingExecutorService(executor);
+    }
+
+    /**
+     * With virtual threads enabled, every fanned-out Stripe call gets its own virtual thread.
+     * Outbound concurrency is then bounded by the HTTP transport and the per-request fan-out caps
+     * rather than by the size of a thread pool.
+     */
+    @Bean(name = "stripeExecutor", destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+    public ExecutorService virtualStripeExecutor() {
+        return new ContextPropagatingExecutorService(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stripe-io-", 0).factory()));
+    }
+}
@@ -0,0 +1,57 @@
+package com.stripe.config;
+
+import com.stripe.Stripe;
+import com.stripe.net.ApiResource;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpURLConnectionClient;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.transport.IsolatingHttpClient;
+import com.stripe.transport.IsolationProperties;
+import com.stripe.transport.MeteredHttpClient;
+import com.stripe.transport.PooledHttpClient;
+import com.stripe.transport.RateLimitProperties;
+import com.stripe.transport.RateLimitedHttpClient;
+import com.stripe.transport.StripeHttpProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({StripeHttpProperties.class, RateLimitProperties.class, IsolationProperties.class})
+public class StripeTransportConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "stripe.http.pooled", havingValue = "true", matchIfMissing = true)
+    public PooledHttpClient pooledStripeHttpClient(StripeHttpProperties properties) {
+        return new PooledHttpClient(properties);
+    }
+
+    /**
+     * Routes every call made through the Stripe SDK over the pooled transport, or the SDK's own
+     * transport when pooling is disabled, and records metrics for each call. Unless disabled, calls
+     * are rate limited first, so retries after a 429 are recorded as calls of their own. Before that,
+     * each operation group passes its bulkhead and circuit breaker, so rejected calls cost nothing.
+     */
+    @Bean
+    public HttpClient stripeHttpClient(StripeHttpProperties properties, RateLimitProperties rateLimit,
+                                       IsolationProperties isolation, ObjectProvider<PooledHttpClient> pooledHttpClient,
+                                       MeterRegistry meterRegistry) {
+        if (!properties.getApiBase().isEmpty()) {
+            Stripe.overrideApiBase(properties.getApiBase());
+        }
+        PooledHttpClient pooled = pooledHttpClient.getIfAvailable();
+        HttpClient transport = pooled != null ? pooled : new HttpURLConnectionClient();
+        HttpClient httpClient = new MeteredHttpClient(transport, meterRegistry);
+        if (rateLimit.isEnabled()) {
+            httpClient = new RateLimitedHttpClient(httpClient, rateLimit, meterRegistry);
+        }
+        if (isolation.isEnabled()) {
+            httpClient = new IsolatingHttpClient(httpClient, isolation, meterRegistry);
+        }
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter(httpClient));
+        return httpClient;
+    }
+}
@@ -0,0 +1,47 @@
+package com.stripe.config;
+
+import com.stripe.account.StripeAccountArgumentResolver;
+import com.stripe.account.StripeAccountRegistry;
+import com.stripe.metrics.RequestContext;
+import com.stripe.metrics.RequestContextInterceptor;
+import com.stripe.metrics.TraceRecorder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final StripeAccountRegistry accountRegistry;
+
+    private final TraceRecorder traceRecorder;
+
+    public WebConfig(StripeAccountRegistry accountRegistry, TraceRecorder traceRecorder) {
+        this.accountRegistry = accountRegistry;
+        this.traceRecorder = traceRecorder;
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new StripeAccountArgumentResolver(accountRegistry));
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestContextInterceptor(traceRecorder));
+    }
+
+    /**
+     * Applied by Spring Boot to the executor that runs streamed response bodies, so their Stripe
+     * calls are traced like those of any other request.
+     */
+    @Bean
+    public TaskDecorator requestContextTaskDecorator() {
+        return RequestContext::propagate;
+    }
+}
@@ -0,0 +1,59 @@
+package com.stripe.controllers;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.controllers.PaymentController.RequestDTO;
+import com.stripe.service.CheckoutService;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterparts of the checkout and subscription endpoints. The request thread is
+ * released while Stripe is called; the response is written when the returned future completes.
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/async")
+public class AsyncPaymentController {
+
+    private static final long TRIAL_PERIOD_DAYS = 30L;
+
+    private final CheckoutService checkoutService;
+
+    public AsyncPaymentController(CheckoutService checkoutService) {
+        this.checkoutService = checkoutService;
+    }
+
+    @PostMapping("/checkout/hosted")
+    CompletableFuture<String> hostedCheckout(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = PaymentController.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return checkoutService.hostedCheckoutAsync(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), requestDTO.isInvoiceNeeded(), idempotencyKey);
+    }
+
+    @PostMapping("/checkout/integrated")
+    CompletableFuture<String> integratedCheckout(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = PaymentController.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return checkoutService.integratedCheckoutAsync(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), requestDTO.isInvoiceNeeded(), requestDTO.getCoupon(), idempotencyKey);
+    }
+
+    @PostMapping("/subscriptions/new")
+    CompletableFuture<String> newSubscription(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = PaymentController.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return checkoutService.subscriptionCheckoutAsync(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), null, idempotencyKey);
+    }
+
+    @PostMapping("/subscriptions/trial")
+    CompletableFuture<String> newSubscriptionWithTrial(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = PaymentController.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return checkoutService.subscriptionCheckoutAsync(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), TRIAL_PERIOD_DAYS, idempotencyKey);
+    }
+}
@@ -1,49 +1,81 @@
 package com.stripe.controllers;
 
 import com.stripe.CustomerUtil;
-import com.stripe.Stripe;
+import com.stripe.account.StripeAccount;
 import com.stripe.exception.StripeException;
 import com.stripe.model.*;
-import com.stripe.model.checkout.Session;
+import com.stripe.metrics.TraceHeadersAdvice;
 import com.stripe.param.*;
-import com.stripe.param.checkout.SessionCreateParams;
-import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData;
-import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.ProductData;
-import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.Recurring;
-import com.stripe.repository.ProductDAO;
+import com.stripe.pricing.CartItem;
+import com.stripe.readmodel.LocalRead;
+import com.stripe.readmodel.ReadModel;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.stripe.service.BulkCheckoutService;
+import com.stripe.service.CheckoutService;
+import com.stripe.service.InvoiceService;
 import com.stripe.service.StripeService;
+import com.stripe.service.SubscriptionService;
+import com.stripe.transport.StripeUnavailableException;
 import com.stripe.utils.Response;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
 import java.util.*;
 
 @RestController
-@CrossOrigin
+@CrossOrigin(exposedHeaders = {PaymentController.DATA_SOURCE, PaymentController.DATA_AGE,
+        TraceHeadersAdvice.CALLS, TraceHeadersAdvice.STRIPE_TIME, TraceHeadersAdvice.FLAGS})
 public class PaymentController {
 
-    @Value("${stripe.key.public}")
-    private String API_PUBLIC_KEY;
+    private static final String NDJSON = "application/x-ndjson";
 
-    @Value("${stripe.key.secret}")
-    private String API_SECRET_KEY;
+    private static final long TRIAL_PERIOD_DAYS = 30L;
 
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
 
-    @Value("${client.base-url}")
-    private String CLIENT_BASE_URL;
+    // Where a list response came from ("stripe" or "read-model"), and how old the local copy was
+    static final String DATA_SOURCE = "X-Data-Source";
+    static final String DATA_AGE = "X-Data-Age-Seconds";
 
     private final StripeService stripeService;
 
+    private final CustomerUtil customerUtil;
+
+    private final InvoiceService invoiceService;
+
+    private final SubscriptionService subscriptionService;
+
+    private final CheckoutService checkoutService;
+
+    private final ReadModel readModel;
+
+    private final BulkCheckoutService bulkCheckoutService;
+
+    private final int maxBulkOrders;
+
     @Autowired
-    public PaymentController(StripeService stripeService) {
+    public PaymentController(StripeService stripeService, CustomerUtil customerUtil, InvoiceService invoiceService,
+                             SubscriptionService subscriptionService, CheckoutService checkoutService, ReadModel readModel,
+                             BulkCheckoutService bulkCheckoutService,
+                             @Value("${stripe.bulk.max-orders:1000}") int maxBulkOrders) {
         this.stripeService = stripeService;
+        this.customerUtil = customerUtil;
+        this.invoiceService = invoiceService;
+        this.subscriptionService = subscriptionService;
+        this.checkoutService = checkoutService;
+        this.readModel = readModel;
+        this.bulkCheckoutService = bulkCheckoutService;
+        this.maxBulkOrders = maxBulkOrders;
     }
 
     @GetMapping("/")
@@ -58,339 +90,203 @@ public class PaymentController {
         private String customerName;
         private String subscriptionId;
         private boolean invoiceNeeded;
-        private List<Product> items;
+        private List<CartItem> items;
+        // Optional coupon id, applied to integrated checkouts and quotes
+        private String coupon;
+        // Id of the last invoice already received, to resume a streamed invoice listing
+        private String cursor;
     }
 
     @PostMapping("/checkout/hosted")
-    String hostedCheckout(@RequestBody RequestDTO requestDTO) throws StripeException {
-
-        Stripe.apiKey = API_SECRET_KEY;
-        String clientBaseURL = CLIENT_BASE_URL;
-
-        // Start by finding an existing customer record from Stripe or creating a new one if needed
-        Customer customer = CustomerUtil.findOrCreateCustomer(requestDTO.getCustomerEmail(), requestDTO.getCustomerName());
-
-        // Next, create a checkout session by adding the details of the checkout
-        SessionCreateParams.Builder paramsBuilder =
-                SessionCreateParams.builder()
-                        .setMode(SessionCreateParams.Mode.PAYMENT)
-                        .setCustomer(customer.getId())
-                        .setSuccessUrl(clientBaseURL + "/success?session_id={CHECKOUT_SESSION_ID}")
-                        .setCancelUrl(clientBaseURL + "/failure");
-
-        for (Product product : requestDTO.getItems()) {
-            paramsBuilder.addLineItem(
-                    SessionCreateParams.LineItem.builder()
-                            .setQuantity(1L)
-                            .setPriceData(
-                                    PriceData.builder()
-                                            .setProductData(
-                                                    ProductData.builder()
-                                                            .putMetadata("app_id", product.getId())
-                                                            .setName(product.getName())
-                                                            .build()
-                                            )
-                                            .setCurrency(ProductDAO.getProduct(product.getId()).getDefaultPriceObject().getCurrency())
-                                            .setUnitAmountDecimal(ProductDAO.getProduct(product.getId()).getDefaultPriceObject().getUnitAmountDecimal())
-                                            .build())
-                            .build());
-        }
-
-        if (requestDTO.isInvoiceNeeded()) {
-            paramsBuilder.setInvoiceCreation(SessionCreateParams.InvoiceCreation.builder().setEnabled(true).build());
-        }
-        Session session = Session.create(paramsBuilder.build());
-
-        return session.getUrl();
+    String hostedCheckout(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) throws StripeException {
+        return checkoutService.hostedCheckout(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), requestDTO.isInvoiceNeeded(), idempotencyKey);
     }
 
     @PostMapping("/checkout/integrated")
-    String integratedCheckout(@RequestBody RequestDTO requestDTO) throws StripeException {
-
-        Stripe.apiKey = API_SECRET_KEY;
-
-        // Start by finding existing customer or creating a new one if needed
-        Customer customer = CustomerUtil.findOrCreateCustomer(requestDTO.getCustomerEmail(), requestDTO.getCustomerName());
-
-        PaymentIntent paymentIntent;
-        // Create a PaymentIntent and send it's client secret to the client
-        if (!requestDTO.isInvoiceNeeded()) {
-            PaymentIntentCreateParams params =
-                    PaymentIntentCreateParams.builder()
-                            .setAmount(Long.parseLong(calculateOrderAmount(requestDTO.getItems())))
-                            .setCurrency("usd")
-                            .setCustomer(customer.getId())
-                            .setAutomaticPaymentMethods(
-                                    PaymentIntentCreateParams.AutomaticPaymentMethods
-                                            .builder()
-                                            .setEnabled(true)
-                                            .build()
-                            )
-                            .build();
-
-            paymentIntent = PaymentIntent.create(params);
-        } else {
-            // If invoice is needed, create the invoice object, add line items to it, and finalize it to create the PaymentIntent automatically
-            InvoiceCreateParams invoiceCreateParams = new InvoiceCreateParams.Builder()
-                    .setCustomer(customer.getId())
-                    .build();
-
-            Invoice invoice = Invoice.create(invoiceCreateParams);
-
-            // Add each item to the invoice one by one
-            for (Product product : requestDTO.getItems()) {
-
-                // Look for existing Product in Stripe before creating a new one
-                Product stripeProduct;
-
-                ProductSearchResult results = Product.search(ProductSearchParams.builder()
-                        .setQuery("metadata['app_id']:'" + product.getId() + "'")
-                        .build());
-
-                if (!results.getData().isEmpty())
-                    stripeProduct = results.getData().get(0);
-                else {
-
-                    // If a product is not found in Stripe database, create it
-                    ProductCreateParams productCreateParams = new ProductCreateParams.Builder()
-                            .setName(product.getName())
-                            .putMetadata("app_id", product.getId())
-                            .build();
-
-                    stripeProduct = Product.create(productCreateParams);
-                }
-
-                // Create an invoice line item using the product object for the line item
-                InvoiceItemCreateParams invoiceItemCreateParams = new InvoiceItemCreateParams.Builder()
-                        .setInvoice(invoice.getId())
-                        .setQuantity(1L)
-                        .setCustomer(customer.getId())
-                        .setPriceData(
-                                InvoiceItemCreateParams.PriceData.builder()
-                                        .setProduct(stripeProduct.getId())
-                                        .setCurrency(ProductDAO.getProduct(product.getId()).getDefaultPriceObject().getCurrency())
-                                        .setUnitAmountDecimal(ProductDAO.getProduct(product.getId()).getDefaultPriceObject().getUnitAmountDecimal())
-                                        .build())
-                        .build();
-
-                InvoiceItem.create(invoiceItemCreateParams);
-            }
+    String integratedCheckout(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) throws StripeException {
+        return checkoutService.integratedCheckout(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), requestDTO.isInvoiceNeeded(), requestDTO.getCoupon(), idempotencyKey);
+    }
 
-            // Mark the invoice as final so that a PaymentIntent is created for it
-            invoice = invoice.finalizeInvoice();
+    /**
+     * Many checkouts in one request, e.g. from back-office tools. mode is "hosted" (session URLs)
+     * or "integrated" (client secrets). One JSON line per order is streamed back as it completes.
+     */
+    @PostMapping(value = "/checkout/bulk", produces = NDJSON)
+    ResponseEntity<StreamingResponseBody> bulkCheckout(@RequestBody List<RequestDTO> requestDTOs, StripeAccount account,
+                          @RequestParam(defaultValue = "hosted") String mode,
+                          @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        BulkCheckoutService.Mode bulkMode;
+        try {
+            bulkMode = BulkCheckoutService.Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown bulk checkout mode: " + mode);
+        }
+        if (requestDTOs.size() > maxBulkOrders) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "At most " + maxBulkOrders + " orders per bulk checkout");
+        }
 
-            // Retrieve the payment intent object from the invoice
-            paymentIntent = PaymentIntent.retrieve(invoice.getPaymentIntent());
+        List<BulkCheckoutService.Order> orders = new ArrayList<>(requestDTOs.size());
+        for (RequestDTO requestDTO : requestDTOs) {
+            orders.add(new BulkCheckoutService.Order(requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                    requestDTO.getItems(), requestDTO.isInvoiceNeeded(), requestDTO.getCoupon()));
         }
 
+        StreamingResponseBody body = out -> bulkCheckoutService.streamCheckouts(account, orders, bulkMode, idempotencyKey, out);
 
-        // Send the client secret from the payment intent to the client
-        return paymentIntent.getClientSecret();
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
     }
 
-    @PostMapping("/subscriptions/new")
-    String newSubscription(@RequestBody RequestDTO requestDTO) throws StripeException {
-
-        Stripe.apiKey = API_SECRET_KEY;
-
-        String clientBaseURL = CLIENT_BASE_URL;
-
-        // Start by finding existing customer record from Stripe or creating a new one if needed
-        Customer customer = CustomerUtil.findOrCreateCustomer(requestDTO.getCustomerEmail(), requestDTO.getCustomerName());
-
-        // Next, create a checkout session by adding the details of the checkout
-        SessionCreateParams.Builder paramsBuilder =
-                SessionCreateParams.builder()
-                        // For subscriptions, you need to set the mode as subscription
-                        .setMode(SessionCreateParams.Mode.SUBSCRIPTION)
-                        .setCustomer(customer.getId())
-                        .setSuccessUrl(clientBaseURL + "/success?session_id={CHECKOUT_SESSION_ID}")
-                        .setCancelUrl(clientBaseURL + "/failure");
+    @PostMapping("/checkout/quote")
+    List<Map<String, Object>> quote(@RequestBody RequestDTO requestDTO, StripeAccount account) throws StripeException {
+        // Totals per currency, as the integrated checkout would charge them
+        return checkoutService.quote(account, requestDTO.getItems(), requestDTO.getCoupon()).toRows();
+    }
 
-        return addLineItem(requestDTO, paramsBuilder);
+    @PostMapping("/subscriptions/new")
+    String newSubscription(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) throws StripeException {
+        return checkoutService.subscriptionCheckout(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), null, idempotencyKey);
     }
 
     @PostMapping("/subscriptions/list")
-    List<Map<String, String>> viewSubscriptions(@RequestBody RequestDTO requestDTO) throws StripeException {
+    ResponseEntity<List<Map<String, String>>> viewSubscriptions(@RequestBody RequestDTO requestDTO, StripeAccount account) throws StripeException {
 
-        Stripe.apiKey = API_SECRET_KEY;
+        // Answer from the local copy when this account has one
+        LocalRead<List<Map<String, String>>> local = readModel.subscriptionRows(account, requestDTO.getCustomerEmail());
+        if (local != null) {
+            return fromReadModel(local);
+        }
 
         // Start by finding existing customer record from Stripe
-        Customer customer = CustomerUtil.findCustomerByEmail(requestDTO.getCustomerEmail());
+        Customer customer = customerUtil.findCustomerByEmail(account, requestDTO.getCustomerEmail());
 
         // If no customer record was found, no subscriptions exist either, so return an empty list
         if (customer == null) {
-            return new ArrayList<>();
-        }
-
-        // Search for subscriptions for the current customer
-        SubscriptionCollection subscriptions = Subscription.list(
-                SubscriptionListParams.builder()
-                        .setCustomer(customer.getId())
-                        .build());
-
-        List<Map<String, String>> response = new ArrayList<>();
-
-        // For each subscription record, query its item records and collect in a list of objects to send to the client
-        for (Subscription subscription : subscriptions.getData()) {
-            SubscriptionItemCollection currSubscriptionItems =
-                    SubscriptionItem.list(SubscriptionItemListParams.builder()
-                            .setSubscription(subscription.getId())
-                            .addExpand("data.price.product")
-                            .build());
-
-            for (SubscriptionItem item : currSubscriptionItems.getData()) {
-                HashMap<String, String> subscriptionData = new HashMap<>();
-                subscriptionData.put("appProductId", item.getPrice().getProductObject().getMetadata().get("app_id"));
-                subscriptionData.put("subscriptionId", subscription.getId());
-                subscriptionData.put("subscribedOn", new SimpleDateFormat("dd/MM/yyyy").format(new Date(subscription.getStartDate() * 1000)));
-                subscriptionData.put("nextPaymentDate", new SimpleDateFormat("dd/MM/yyyy").format(new Date(subscription.getCurrentPeriodEnd() * 1000)));
-                subscriptionData.put("price", item.getPrice().getUnitAmountDecimal().toString());
-
-                if (subscription.getTrialEnd() != null && new Date(subscription.getTrialEnd() * 1000).after(new Date()))
-                    subscriptionData.put("trialEndsOn", new SimpleDateFormat("dd/MM/yyyy").format(new Date(subscription.getTrialEnd() * 1000)));
-                response.add(subscriptionData);
-            }
-
+            return fromStripe(new ArrayList<>());
         }
 
-        return response;
+        // Collect every subscription item of the customer in a list of objects to send to the client
+        return fromStripe(subscriptionService.listSubscriptionRows(account, customer.getId()));
     }
 
     @PostMapping("/subscriptions/cancel")
-    String cancelSubscription(@RequestBody RequestDTO requestDTO) throws StripeException {
-        Stripe.apiKey = API_SECRET_KEY;
+    String cancelSubscription(@RequestBody RequestDTO requestDTO, StripeAccount account) throws StripeException {
 
         Subscription subscription =
                 Subscription.retrieve(
-                        requestDTO.getSubscriptionId()
+                        requestDTO.getSubscriptionId(),
+                        account.options()
                 );
 
         Subscription deletedSubscription =
-                subscription.cancel();
+                subscription.cancel(SubscriptionCancelParams.builder().build(), account.options());
 
         return deletedSubscription.getStatus();
     }
 
     @PostMapping("/subscriptions/trial")
-    String newSubscriptionWithTrial(@RequestBody RequestDTO requestDTO) throws StripeException {
-
-        Stripe.apiKey = API_SECRET_KEY;
-
-        String clientBaseURL = CLIENT_BASE_URL;
-
-        // Start by finding existing customer record from Stripe or creating a new one if needed
-        Customer customer = CustomerUtil.findOrCreateCustomer(requestDTO.getCustomerEmail(), requestDTO.getCustomerName());
-
-        // Next, create a checkout session by adding the details of the checkout
-        SessionCreateParams.Builder paramsBuilder =
-                SessionCreateParams.builder()
-                        .setMode(SessionCreateParams.Mode.SUBSCRIPTION)
-                        .setCustomer(customer.getId())
-                        .setSuccessUrl(clientBaseURL + "/success?session_id={CHECKOUT_SESSION_ID}")
-                        .setCancelUrl(clientBaseURL + "/failure")
-                        // For trials, you need to set the trial period in the session creation request
-                        .setSubscriptionData(SessionCreateParams.SubscriptionData.builder().setTrialPeriodDays(30L).build());
-
-        return addLineItem(requestDTO, paramsBuilder);
+    String newSubscriptionWithTrial(@RequestBody RequestDTO requestDTO, StripeAccount account,
+                          @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) throws StripeException {
+        return checkoutService.subscriptionCheckout(account, requestDTO.getCustomerEmail(), requestDTO.getCustomerName(),
+                requestDTO.getItems(), TRIAL_PERIOD_DAYS, idempotencyKey);
     }
 
     @PostMapping("/invoices/list")
-    List<Map<String, String>> listInvoices(@RequestBody RequestDTO requestDTO) throws StripeException {
+    ResponseEntity<List<Map<String, String>>> listInvoices(@RequestBody RequestDTO requestDTO, StripeAccount account) throws StripeException {
 
-        Stripe.apiKey = API_SECRET_KEY;
+        // Answer from the local copy when this account has one
+        LocalRead<List<Map<String, String>>> local = readModel.invoiceRows(account, requestDTO.getCustomerEmail());
+        if (local != null) {
+            return fromReadModel(local);
+        }
 
         // Start by finding existing customer record from Stripe
-        Customer customer = CustomerUtil.findCustomerByEmail(requestDTO.getCustomerEmail());
+        Customer customer = customerUtil.findCustomerByEmail(account, requestDTO.getCustomerEmail());
 
         // If no customer record was found, no subscriptions exist either, so return an empty list
         if (customer == null) {
-            return new ArrayList<>();
+            return fromStripe(new ArrayList<>());
         }
 
-        // Search for invoices for the current customer
-        Map<String, Object> invoiceSearchParams = new HashMap<>();
-        invoiceSearchParams.put("customer", customer.getId());
-        InvoiceCollection invoices =
-                Invoice.list(invoiceSearchParams);
+        // List all invoices of the current customer, page by page, like the read model has them
+        InvoiceListParams invoiceListParams = InvoiceListParams.builder()
+                .setCustomer(customer.getId())
+                .setLimit(100L)
+                .build();
 
         List<Map<String, String>> response = new ArrayList<>();
 
         // For each invoice, extract its number, amount, and PDF URL to send to the client
-        for (Invoice invoice : invoices.getData()) {
-            HashMap<String, String> map = new HashMap<>();
-
-            map.put("number", invoice.getNumber());
-            map.put("amount", String.valueOf((invoice.getTotal() / 100f)));
-            map.put("url", invoice.getInvoicePdf());
-
-            response.add(map);
+        for (Invoice invoice : Invoice.list(invoiceListParams, account.options()).autoPagingIterable()) {
+            response.add(InvoiceService.toRow(invoice));
         }
 
-        return response;
+        return fromStripe(response);
     }
 
-    private String addLineItem(@RequestBody RequestDTO requestDTO, SessionCreateParams.Builder paramsBuilder) throws StripeException {
-        for (Product product : requestDTO.getItems()) {
-            paramsBuilder.addLineItem(
-                    SessionCreateParams.LineItem.builder()
-                            .setQuantity(1L)
-                            .setPriceData(
-                                    PriceData.builder()
-                                            .setProductData(
-                                                    ProductData.builder()
-                                                            .putMetadata("app_id", product.getId())
-                                                            .setName(product.getName())
-                                                            .build()
-                                            )
-                                            .setCurrency(ProductDAO.getProduct(product.getId()).getDefaultPriceObject().getCurrency())
-                                            .setUnitAmountDecimal(ProductDAO.getProduct(product.getId()).getDefaultPriceObject().getUnitAmountDecimal())
-                                            .setRecurring(Recurring.builder().setInterval(Recurring.Interval.MONTH).build())
-                                            .build())
-                            .build());
-        }
-
-        Session session = Session.create(paramsBuilder.build());
+    private static <T> ResponseEntity<T> fromStripe(T body) {
+        return ResponseEntity.ok().header(DATA_SOURCE, "stripe").body(body);
+    }
 
-        return session.getUrl();
+    private static <T> ResponseEntity<T> fromReadModel(LocalRead<T> local) {
+        return ResponseEntity.ok()
+                .header(DATA_SOURCE, "read-model")
+                .header(DATA_AGE, String.valueOf(local.getAgeSeconds()))
+                .body(local.getValue());
     }
 
-    static String calculateOrderAmount(List<Product> items) {
-        long total = 0L;
+    @PostMapping(value = "/invoices/stream", produces = NDJSON)
+    ResponseEntity<StreamingResponseBody> streamInvoices(@RequestBody RequestDTO requestDTO, StripeAccount account) throws StripeException {
 
-        for (Product item: items) {
-            // Look up the application database to find the prices for the products in the given list
-            total += (long) ProductDAO.getProduct(item.getId()).getDefaultPriceObject().getUnitAmountDecimal().floatValue();
-        }
-        return String.valueOf(total);
+        // Start by finding existing customer record from Stripe
+        Customer customer = customerUtil.findCustomerByEmail(account, requestDTO.getCustomerEmail());
+
+        // Invoices are written page by page as Stripe returns them, so memory use does not grow with their number
+        StreamingResponseBody body = out -> {
+            if (customer != null) {
+                try {
+                    invoiceService.streamInvoices(account, customer.getId(), requestDTO.getCursor(), out);
+                } catch (StripeException e) {
+                    throw new IOException("Listing invoices failed", e);
+                }
+            }
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
     }
 
     @GetMapping("/subscription")
-    public String subscriptionPage(Model model) {
-        model.addAttribute("stripePublicKey", API_PUBLIC_KEY);
+    public String subscriptionPage(Model model, StripeAccount account) {
+        model.addAttribute("stripePublicKey", account.getPublicKey());
         return "subscription";
     }
 
     @GetMapping("/charge")
-    public String chargePage(Model model) {
-        model.addAttribute("stripePublicKey", API_PUBLIC_KEY);
+    public String chargePage(Model model, StripeAccount account) {
+        model.addAttribute("stripePublicKey", account.getPublicKey());
         return "charge";
     }
 
     @PostMapping("/create-subscription")
-    public @ResponseBody Response createSubscription(String email, String token, String plan, String coupon) {
+    public @ResponseBody Response createSubscription(String email, String token, String plan, String coupon, StripeAccount account) throws StripeUnavailableException {
 
         if (token == null || plan.isEmpty()) {
             return new Response(false, "Stripe payment token is missing. Please try again later.");
         }
 
-        String customerId = stripeService.createCustomer(email, token);
+        String customerId = stripeService.createCustomer(account, email, token);
 
         if (customerId == null) {
             return new Response(false, "An error accurred while trying to create customer");
         }
 
-        String subscriptionId = stripeService.createSubscription(customerId, plan, coupon);
+        String subscriptionId = stripeService.createSubscription(account, customerId, plan, coupon);
 
         if (subscriptionId == null) {
             return new Response(false, "An error accurred while trying to create subscription");
@@ -400,9 +296,9 @@ public class PaymentController {
     }
 
     @PostMapping("/cancel-subscription")
-    public @ResponseBody Response cancelSubscription(String subscriptionId) {
+    public @ResponseBody Response cancelSubscription(String subscriptionId, StripeAccount account) throws StripeUnavailableException {
 
-        boolean subscriptionStatus = stripeService.cancelSubscription(subscriptionId);
+        boolean subscriptionStatus = stripeService.cancelSubscription(account, subscriptionId);
 
         if (!subscriptionStatus) {
             return new Response(false, "Faild to cancel subscription. Please try again later");
@@ -412,9 +308,9 @@ public class PaymentController {
     }
 
     @PostMapping("/coupon-validator")
-    public @ResponseBody Response couponValidator(String code) {
+    public @ResponseBody Response couponValidator(String code, StripeAccount account) throws StripeUnavailableException {
 
-        Coupon coupon = stripeService.retriveCoupon(code);
+        Coupon coupon = stripeService.retriveCoupon(account, code);
 
         if (coupon != null && coupon.getValid()) {
             String details = (coupon.getPercentOff() == null ? "$" + (coupon.getAmountOff() / 100)
@@ -426,13 +322,13 @@ public class PaymentController {
     }
 
     @PostMapping("/create-charge")
-    public @ResponseBody Response createCharge(String email, String token) {
+    public @ResponseBody Response createCharge(String email, String token, StripeAccount account) throws StripeUnavailableException {
 
         if (token == null) {
             return new Response(false, "Stripe payment token is missing. please try again later.");
         }
 
-        String chargeId = stripeService.createCharge(email, token, 999);// 9.99 usd
+        String chargeId = stripeService.createCharge(account, email, token, 999);// 9.99 usd
 
         if (chargeId == null) {
             return new Response(false, "An error accurred while trying to charge.");
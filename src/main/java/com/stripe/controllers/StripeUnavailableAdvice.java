@@ -0,0 +1,28 @@
+package com.stripe.controllers;
+
+import com.stripe.transport.StripeUnavailableException;
+import com.stripe.utils.Response;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+
+/**
+ * Turns calls rejected by a circuit breaker or bulkhead into a fast {@link Response} with status
+ * false. API clients get a 503 with Retry-After; the payment pages, which only read the body of
+ * successful responses, get it with a 200.
+ */
+@RestControllerAdvice
+public class StripeUnavailableAdvice {
+
+    @ExceptionHandler(StripeUnavailableException.class)
+    ResponseEntity<Response> unavailable(StripeUnavailableException e, HandlerMethod handler) {
+        HttpStatus status = Response.class.equals(handler.getMethod().getReturnType())
+                ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new Response(false, e.getMessage()));
+    }
+}
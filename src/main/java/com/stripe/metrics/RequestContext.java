@@ -0,0 +1,83 @@
+package com.stripe.metrics;
+
+/**
+ * What the current thread is working on behalf of: the endpoint of the inbound request that
+ * triggered it, and the trace its Stripe calls are recorded in. Set by {@link RequestContextInterceptor} on request threads and carried over to
+ * the stripe-io executor by {@link ContextPropagatingExecutorService}, so outbound Stripe calls
+ * can be attributed to the endpoint that caused them.
+ */
+public final class RequestContext {
+
+    public static final String NO_ENDPOINT = "none";
+
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    private final String endpoint;
+
+    private final String method;
+
+    private final RequestTrace trace = new RequestTrace();
+
+    RequestContext(String endpoint, String method) {
+        this.endpoint = endpoint;
+        this.method = method;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public RequestTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return the context of the current thread, or null outside of a request
+     */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the endpoint pattern of the current request, e.g. {@code /checkout/hosted}
+     */
+    public static String endpoint() {
+        RequestContext context = CURRENT.get();
+        return context != null ? context.endpoint : NO_ENDPOINT;
+    }
+
+    static void begin(RequestContext context) {
+        CURRENT.set(context);
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return a task that runs with the caller's context, and restores the worker's own afterwards
+     */
+    public static Runnable propagate(Runnable task) {
+        RequestContext context = CURRENT.get();
+        if (context == null) {
+            return task;
+        }
+        return () -> {
+            RequestContext previous = CURRENT.get();
+            CURRENT.set(context);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+}
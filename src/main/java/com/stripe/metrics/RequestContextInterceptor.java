@@ -0,0 +1,50 @@
+package com.stripe.metrics;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Opens a {@link RequestContext} for every handled request, named after the matched URL pattern
+ * so that path variables do not create a metric series per value. The context is kept as a
+ * request attribute, so the dispatch that writes an asynchronous result continues the same
+ * trace, and is handed to the {@link TraceRecorder} when the request completes.
+ */
+public class RequestContextInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String ATTRIBUTE = RequestContext.class.getName();
+
+    private final TraceRecorder recorder;
+
+    public RequestContextInterceptor(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestContext context = (RequestContext) request.getAttribute(ATTRIBUTE);
+        if (context == null) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            context = new RequestContext(pattern != null ? pattern.toString() : RequestContext.NO_ENDPOINT, request.getMethod());
+            request.setAttribute(ATTRIBUTE, context);
+        }
+        RequestContext.begin(context);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // The request continues asynchronously, the executor tasks already carry the context
+        RequestContext.end();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestContext.end();
+        RequestContext context = (RequestContext) request.getAttribute(ATTRIBUTE);
+        if (context != null) {
+            recorder.complete(context);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.stripe.metrics;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The Stripe calls made for one inbound request. Calls may be recorded from several threads at
+ * once when a request fans out.
+ */
+public class RequestTrace {
+
+    @Value
+    public static class Call {
+        String operation;
+        int status;
+        long durationMicros;
+        // Length of the response body, -1 for streamed responses
+        long responseSize;
+    }
+
+    private final long startNanos = System.nanoTime();
+
+    private final ConcurrentLinkedQueue<Call> calls = new ConcurrentLinkedQueue<>();
+
+    public void record(String operation, int status, long durationNanos, long responseSize) {
+        calls.add(new Call(operation, status, durationNanos / 1000, responseSize));
+    }
+
+    public List<Call> getCalls() {
+        return new ArrayList<>(calls);
+    }
+
+    public int callCount() {
+        return calls.size();
+    }
+
+    /**
+     * @return time spent waiting for Stripe, summed over all calls (exceeds the wall time when calls overlap)
+     */
+    public long stripeMillis() {
+        long micros = 0;
+        for (Call call : calls) {
+            micros += call.durationMicros;
+        }
+        return micros / 1000;
+    }
+
+    public long elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * @return number of calls per operation, sorted by operation name
+     */
+    public Map<String, Integer> countsByOperation() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Call call : calls) {
+            counts.merge(call.operation, 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,27 @@
+package com.stripe.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/stripetraces}: recent requests that were slow, over their Stripe call budget
+ * or repeated an operation, with every Stripe call they made.
+ */
+@Component
+@Endpoint(id = "stripetraces")
+public class StripeTracesEndpoint {
+
+    private final TraceRecorder recorder;
+
+    public StripeTracesEndpoint(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @ReadOperation
+    public List<TraceRecorder.TraceSummary> traces() {
+        return recorder.recent();
+    }
+}
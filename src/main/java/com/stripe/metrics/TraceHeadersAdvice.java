@@ -0,0 +1,49 @@
+package com.stripe.metrics;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.List;
+
+/**
+ * Adds the Stripe call summary of the request to its response, right before the body is written.
+ */
+@ControllerAdvice
+public class TraceHeadersAdvice implements ResponseBodyAdvice<Object> {
+
+    public static final String CALLS = "X-Stripe-Calls";
+    public static final String STRIPE_TIME = "X-Stripe-Time-Ms";
+    public static final String FLAGS = "X-Stripe-Trace-Flags";
+
+    private final TraceRecorder recorder;
+
+    public TraceHeadersAdvice(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        RequestContext context = RequestContext.current();
+        if (context != null && context.getTrace().callCount() > 0) {
+            response.getHeaders().set(CALLS, String.valueOf(context.getTrace().callCount()));
+            response.getHeaders().set(STRIPE_TIME, String.valueOf(context.getTrace().stripeMillis()));
+            List<String> flags = recorder.flags(context);
+            if (!flags.isEmpty()) {
+                response.getHeaders().set(FLAGS, String.join("; ", flags));
+            }
+        }
+        return body;
+    }
+}
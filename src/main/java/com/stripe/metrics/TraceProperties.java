@@ -0,0 +1,27 @@
+package com.stripe.metrics;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "stripe.trace")
+public class TraceProperties {
+
+    // Stripe calls a request may make before it is flagged
+    private int callBudget = 10;
+
+    // Budgets by endpoint pattern, e.g. stripe.trace.call-budgets.[/checkout/bulk]=2000
+    private Map<String, Integer> callBudgets = new LinkedHashMap<>();
+
+    // Calls to the same operation within one request that are flagged as a likely N+1 pattern
+    private int repeatThreshold = 5;
+
+    // Requests slower than this are kept for /actuator/stripetraces even when within budget
+    private long slowMs = 1000;
+
+    // Number of flagged or slow traces kept
+    private int bufferSize = 100;
+}
@@ -0,0 +1,132 @@
+package com.stripe.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks completed request traces against the call budget, records how many Stripe calls each
+ * endpoint makes, and keeps the most recent slow or flagged traces in a ring buffer.
+ */
+@Component
+@EnableConfigurationProperties(TraceProperties.class)
+public class TraceRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceRecorder.class);
+
+    @Value
+    public static class TraceSummary {
+        Instant completedAt;
+        String method;
+        String endpoint;
+        long elapsedMs;
+        long stripeMs;
+        int callCount;
+        List<String> flags;
+        List<RequestTrace.Call> calls;
+    }
+
+    private final TraceProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Deque<TraceSummary> recent = new ArrayDeque<>();
+
+    public TraceRecorder(TraceProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return the problems found in the trace so far, empty if there are none
+     */
+    public List<String> flags(RequestContext context) {
+        RequestTrace trace = context.getTrace();
+        List<String> flags = new ArrayList<>();
+
+        int budget = properties.getCallBudgets().getOrDefault(context.getEndpoint(), properties.getCallBudget());
+        if (trace.callCount() > budget) {
+            flags.add("over budget: " + trace.callCount() + " calls, budget " + budget);
+        }
+        for (Map.Entry<String, Integer> operation : trace.countsByOperation().entrySet()) {
+            if (operation.getValue() >= properties.getRepeatThreshold()) {
+                flags.add("repeated: " + operation.getKey() + " x" + operation.getValue());
+            }
+        }
+        return flags;
+    }
+
+    public void complete(RequestContext context) {
+        RequestTrace trace = context.getTrace();
+
+        DistributionSummary.builder("stripe.calls.per.request")
+                .description("Stripe API calls made to answer one request")
+                .tag("endpoint", context.getEndpoint())
+                .register(meterRegistry)
+                .record(trace.callCount());
+
+        if (trace.callCount() == 0) {
+            return;
+        }
+
+        List<String> flags = flags(context);
+        long elapsed = trace.elapsedMillis();
+        String summary = summary(context, elapsed, flags);
+        if (!flags.isEmpty()) {
+            Counter.builder("stripe.trace.flagged")
+                    .description("Requests whose Stripe calls exceeded the budget or repeated an operation")
+                    .tag("endpoint", context.getEndpoint())
+                    .register(meterRegistry)
+                    .increment();
+            log.warn(summary);
+        } else {
+            log.debug(summary);
+        }
+
+        if (!flags.isEmpty() || elapsed >= properties.getSlowMs()) {
+            TraceSummary traceSummary = new TraceSummary(Instant.now(), context.getMethod(), context.getEndpoint(),
+                    elapsed, trace.stripeMillis(), trace.callCount(), flags, trace.getCalls());
+            synchronized (recent) {
+                recent.addFirst(traceSummary);
+                while (recent.size() > properties.getBufferSize()) {
+                    recent.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the kept traces, newest first
+     */
+    public List<TraceSummary> recent() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    private static String summary(RequestContext context, long elapsed, List<String> flags) {
+        RequestTrace trace = context.getTrace();
+        StringBuilder summary = new StringBuilder()
+                .append(context.getMethod()).append(' ').append(context.getEndpoint())
+                .append(": ").append(trace.callCount()).append(" Stripe calls, ")
+                .append(trace.stripeMillis()).append(" ms in Stripe, ")
+                .append(elapsed).append(" ms total ")
+                .append(trace.countsByOperation());
+        if (!flags.isEmpty()) {
+            summary.append(' ').append(flags);
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.stripe.pricing;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of a cart as sent by the client. Prices always come from the catalog, never from here.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartItem {
+    private String id;
+    private String name;
+    // Clients that do not send a quantity buy one of each item
+    private long quantity = 1;
+}
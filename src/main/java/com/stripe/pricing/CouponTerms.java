@@ -0,0 +1,34 @@
+package com.stripe.pricing;
+
+import com.stripe.model.Coupon;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+
+/**
+ * The discount of a coupon in integer form: a percentage in hundredths of a percent (1250 is
+ * 12.5 %), or a fixed amount in the minor unit of one currency.
+ */
+@Value
+public class CouponTerms {
+    long percentOffHundredths;
+    long amountOff;
+    String currency;
+
+    public static CouponTerms percentOff(BigDecimal percent) {
+        return new CouponTerms(percent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact(), 0, null);
+    }
+
+    public static CouponTerms amountOff(long amount, String currency) {
+        return new CouponTerms(0, amount, currency.toLowerCase(Locale.ROOT));
+    }
+
+    public static CouponTerms of(Coupon coupon) {
+        if (coupon.getPercentOff() != null) {
+            return percentOff(coupon.getPercentOff());
+        }
+        return amountOff(coupon.getAmountOff(), coupon.getCurrency());
+    }
+}
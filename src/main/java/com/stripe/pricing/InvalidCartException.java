@@ -0,0 +1,12 @@
+package com.stripe.pricing;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidCartException extends RuntimeException {
+
+    public InvalidCartException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,64 @@
+package com.stripe.pricing;
+
+import com.stripe.repository.Catalog;
+import com.stripe.repository.UnknownProductException;
+
+import java.util.List;
+
+/**
+ * Prices carts from the catalog in exact integer minor units. Overflowing totals fail with an
+ * {@link ArithmeticException} instead of wrapping around.
+ */
+public final class PricingEngine {
+
+    private PricingEngine() {
+    }
+
+    /**
+     * Totals the cart per currency and applies the coupon, if any.
+     */
+    public static Quote quote(Catalog catalog, List<CartItem> items, CouponTerms coupon) {
+        Quote quote = new Quote();
+        for (int i = 0, n = items.size(); i < n; i++) {
+            CartItem item = items.get(i);
+            int index = indexOf(catalog, item.getId());
+            quote.add(catalog.currency(index), Math.multiplyExact(catalog.unitAmount(index), checkQuantity(item.getQuantity())));
+        }
+        if (coupon != null) {
+            quote.apply(coupon);
+        }
+        return quote;
+    }
+
+    /**
+     * Totals a cart given as parallel arrays without allocating, for large carts and bulk quotes.
+     * Every product must be priced in {@code currency}.
+     */
+    public static long total(Catalog catalog, String[] ids, long[] quantities, int length, String currency) {
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            int index = indexOf(catalog, ids[i]);
+            String itemCurrency = catalog.currency(index);
+            if (itemCurrency != currency && !itemCurrency.equals(currency)) {
+                throw new InvalidCartException("Product " + ids[i] + " is priced in " + itemCurrency + ", not " + currency);
+            }
+            total = Math.addExact(total, Math.multiplyExact(catalog.unitAmount(index), checkQuantity(quantities[i])));
+        }
+        return total;
+    }
+
+    private static int indexOf(Catalog catalog, String id) {
+        int index = catalog.indexOf(id);
+        if (index < 0) {
+            throw new UnknownProductException(id);
+        }
+        return index;
+    }
+
+    private static long checkQuantity(long quantity) {
+        if (quantity <= 0) {
+            throw new InvalidCartException("Quantity must be positive, was " + quantity);
+        }
+        return quantity;
+    }
+}
@@ -0,0 +1,101 @@
+package com.stripe.pricing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cart totals per currency, in minor units. Currencies are kept in parallel arrays in the order
+ * they first appear in the cart; carts rarely mix more than one or two.
+ */
+public final class Quote {
+
+    private String[] currencies = new String[2];
+    private long[] subtotals = new long[2];
+    private long[] discounts = new long[2];
+    private int size;
+
+    void add(String currency, long amount) {
+        int i = indexOf(currency);
+        if (i < 0) {
+            if (size == currencies.length) {
+                currencies = Arrays.copyOf(currencies, size * 2);
+                subtotals = Arrays.copyOf(subtotals, size * 2);
+                discounts = Arrays.copyOf(discounts, size * 2);
+            }
+            i = size++;
+            currencies[i] = currency;
+        }
+        subtotals[i] = Math.addExact(subtotals[i], amount);
+    }
+
+    /**
+     * A percentage applies to every currency and is rounded half up per currency, like Stripe
+     * does. A fixed amount only applies to its own currency and never exceeds the subtotal.
+     */
+    void apply(CouponTerms coupon) {
+        for (int i = 0; i < size; i++) {
+            if (coupon.getPercentOffHundredths() > 0) {
+                discounts[i] = (Math.multiplyExact(subtotals[i], coupon.getPercentOffHundredths()) + 5_000) / 10_000;
+            } else if (currencies[i].equals(coupon.getCurrency())) {
+                discounts[i] = Math.min(subtotals[i], coupon.getAmountOff());
+            }
+        }
+    }
+
+    public int currencyCount() {
+        return size;
+    }
+
+    public String currency(int i) {
+        return currencies[i];
+    }
+
+    public long subtotal(int i) {
+        return subtotals[i];
+    }
+
+    public long discount(int i) {
+        return discounts[i];
+    }
+
+    public long total(int i) {
+        return subtotals[i] - discounts[i];
+    }
+
+    /**
+     * @return the index of the only currency, for payments that cannot mix currencies
+     */
+    public int singleCurrency() {
+        if (size != 1) {
+            throw new InvalidCartException(size == 0 ? "The cart is empty"
+                    : "The cart mixes currencies " + String.join(", ", Arrays.asList(currencies).subList(0, size)));
+        }
+        return 0;
+    }
+
+    public List<Map<String, Object>> toRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("currency", currencies[i]);
+            row.put("subtotal", subtotals[i]);
+            row.put("discount", discounts[i]);
+            row.put("total", total(i));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private int indexOf(String currency) {
+        for (int i = 0; i < size; i++) {
+            // Catalog currencies are interned, so the reference check almost always decides
+            if (currencies[i] == currency || currencies[i].equals(currency)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
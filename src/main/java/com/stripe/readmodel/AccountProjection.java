@@ -0,0 +1,304 @@
+package com.stripe.readmodel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Customers, subscriptions and invoices of one Stripe account, indexed by email and customer id.
+ * <p>
+ * Every entry carries a version in epoch seconds: the creation time of the event that wrote it,
+ * or the start time of the backfill that read it. An older version never replaces a newer one,
+ * so a slow backfill cannot undo an event received while it was running. Deleted objects are
+ * kept as empty entries until the next backfill, for the same reason.
+ */
+class AccountProjection {
+
+    static class Versioned<V> {
+        final V value;
+        final long version;
+
+        Versioned(V value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    // Everything needed to rebuild the projection, as written to the snapshot file
+    static class State {
+        Map<String, Versioned<CustomerView>> customers = new HashMap<>();
+        Map<String, Versioned<SubscriptionView>> subscriptions = new HashMap<>();
+        Map<String, Versioned<InvoiceView>> invoices = new HashMap<>();
+        long syncedAt;
+    }
+
+    // Emails are matched case-insensitively, customer ids as they are
+    private static final Function<CustomerView, String> EMAIL = customer -> normalize(customer.getEmail());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private State state = new State();
+
+    private final Map<String, Set<String>> customerIdsByEmail = new HashMap<>();
+    private final Map<String, Set<String>> subscriptionIdsByCustomer = new HashMap<>();
+    private final Map<String, Set<String>> invoiceIdsByCustomer = new HashMap<>();
+
+    private final AtomicBoolean backfilling = new AtomicBoolean();
+
+    private volatile boolean ready;
+
+    private volatile boolean dirty;
+
+    // When the model was last known to match Stripe, in epoch millis
+    private volatile long syncedAt;
+
+    boolean isReady() {
+        return ready;
+    }
+
+    long ageSeconds() {
+        return Math.max(0, (System.currentTimeMillis() - syncedAt) / 1000);
+    }
+
+    /**
+     * @return false if a backfill of this account is already running
+     */
+    boolean startBackfill() {
+        return backfilling.compareAndSet(false, true);
+    }
+
+    /**
+     * Drops every entry older than the backfill, i.e. objects that no longer exist in Stripe and
+     * were not touched by an event since, and starts serving reads.
+     */
+    void completeBackfill(long version) {
+        lock.writeLock().lock();
+        try {
+            retainSince(state.customers, customerIdsByEmail, EMAIL, version);
+            retainSince(state.subscriptions, subscriptionIdsByCustomer, SubscriptionView::getCustomerId, version);
+            retainSince(state.invoices, invoiceIdsByCustomer, InvoiceView::getCustomerId, version);
+            syncedAt = System.currentTimeMillis();
+            ready = true;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void endBackfill() {
+        backfilling.set(false);
+    }
+
+    /**
+     * Records that an event was applied, which proves the model is receiving updates.
+     */
+    void touch() {
+        syncedAt = System.currentTimeMillis();
+        dirty = true;
+    }
+
+    /**
+     * Runs several puts under one write lock, so readers see all of them or none.
+     */
+    void writeBatch(Runnable puts) {
+        lock.writeLock().lock();
+        try {
+            puts.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putCustomer(String id, CustomerView customer, long version) {
+        lock.writeLock().lock();
+        try {
+            put(state.customers, customerIdsByEmail, EMAIL, id, customer, version);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putSubscription(String id, SubscriptionView subscription, long version) {
+        lock.writeLock().lock();
+        try {
+            put(state.subscriptions, subscriptionIdsByCustomer, SubscriptionView::getCustomerId, id, subscription, version);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putInvoice(String id, InvoiceView invoice, long version) {
+        lock.writeLock().lock();
+        try {
+            put(state.invoices, invoiceIdsByCustomer, InvoiceView::getCustomerId, id, invoice, version);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the id of the oldest customer with this email, or null if there is none
+     */
+    String customerIdByEmail(String email) {
+        lock.readLock().lock();
+        try {
+            Set<String> ids = customerIdsByEmail.get(normalize(email));
+            if (ids == null) {
+                return null;
+            }
+
+            CustomerView oldest = null;
+            for (String id : ids) {
+                CustomerView customer = state.customers.get(id).value;
+                if (oldest == null || customer.getCreated() < oldest.getCreated()) {
+                    oldest = customer;
+                }
+            }
+            return oldest != null ? oldest.getId() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the customer's subscriptions, newest first
+     */
+    List<SubscriptionView> subscriptionsOf(String customerId) {
+        lock.readLock().lock();
+        try {
+            return collect(state.subscriptions, subscriptionIdsByCustomer.get(customerId),
+                    Comparator.comparingLong(SubscriptionView::getCreated).reversed());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the customer's invoices, newest first
+     */
+    List<InvoiceView> invoicesOf(String customerId) {
+        lock.readLock().lock();
+        try {
+            return collect(state.invoices, invoiceIdsByCustomer.get(customerId),
+                    Comparator.comparingLong(InvoiceView::getCreated).reversed());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the state to persist, or null if nothing changed since the last call
+     */
+    String exportIfDirty(Function<State, String> serializer) {
+        if (!dirty) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            dirty = false;
+            state.syncedAt = syncedAt;
+            return serializer.apply(state);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the content with a persisted state and serves it until the next backfill completes.
+     */
+    void restore(State restored) {
+        lock.writeLock().lock();
+        try {
+            state = restored;
+            syncedAt = restored.syncedAt;
+            customerIdsByEmail.clear();
+            subscriptionIdsByCustomer.clear();
+            invoiceIdsByCustomer.clear();
+            reindex(state.customers, customerIdsByEmail, EMAIL);
+            reindex(state.subscriptions, subscriptionIdsByCustomer, SubscriptionView::getCustomerId);
+            reindex(state.invoices, invoiceIdsByCustomer, InvoiceView::getCustomerId);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static <V> void put(Map<String, Versioned<V>> table, Map<String, Set<String>> index,
+                                Function<V, String> indexKey, String id, V value, long version) {
+        Versioned<V> current = table.get(id);
+        if (current != null && current.version > version) {
+            return;
+        }
+        if (current != null && current.value != null) {
+            unindex(index, indexKey.apply(current.value), id);
+        }
+
+        table.put(id, new Versioned<>(value, version));
+        if (value != null) {
+            index(index, indexKey.apply(value), id);
+        }
+    }
+
+    private static <V> void retainSince(Map<String, Versioned<V>> table, Map<String, Set<String>> index,
+                                        Function<V, String> indexKey, long version) {
+        Iterator<Map.Entry<String, Versioned<V>>> entries = table.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Versioned<V>> entry = entries.next();
+            if (entry.getValue().version < version) {
+                if (entry.getValue().value != null) {
+                    unindex(index, indexKey.apply(entry.getValue().value), entry.getKey());
+                }
+                entries.remove();
+            }
+        }
+    }
+
+    private static <V> void reindex(Map<String, Versioned<V>> table, Map<String, Set<String>> index, Function<V, String> indexKey) {
+        table.forEach((id, entry) -> {
+            if (entry.value != null) {
+                index(index, indexKey.apply(entry.value), id);
+            }
+        });
+    }
+
+    private static <V> List<V> collect(Map<String, Versioned<V>> table, Set<String> ids, Comparator<V> order) {
+        List<V> values = new ArrayList<>();
+        if (ids != null) {
+            for (String id : ids) {
+                values.add(table.get(id).value);
+            }
+        }
+        values.sort(order);
+        return values;
+    }
+
+    private static void index(Map<String, Set<String>> index, String key, String id) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    private static void unindex(Map<String, Set<String>> index, String key, String id) {
+        if (key == null) {
+            return;
+        }
+        Set<String> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static String normalize(String key) {
+        return key != null ? key.trim().toLowerCase(Locale.ROOT) : null;
+    }
+}
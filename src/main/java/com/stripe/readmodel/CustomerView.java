@@ -0,0 +1,15 @@
+package com.stripe.readmodel;
+
+import com.stripe.model.Customer;
+import lombok.Value;
+
+@Value
+public class CustomerView {
+    String id;
+    String email;
+    long created;
+
+    static CustomerView of(Customer customer) {
+        return new CustomerView(customer.getId(), customer.getEmail(), customer.getCreated());
+    }
+}
@@ -0,0 +1,19 @@
+package com.stripe.readmodel;
+
+import com.stripe.model.Invoice;
+import lombok.Value;
+
+@Value
+public class InvoiceView {
+    String id;
+    String customerId;
+    long created;
+    String number;
+    long total;
+    String invoicePdf;
+
+    static InvoiceView of(Invoice invoice) {
+        return new InvoiceView(invoice.getId(), invoice.getCustomer(), invoice.getCreated(), invoice.getNumber(),
+                invoice.getTotal(), invoice.getInvoicePdf());
+    }
+}
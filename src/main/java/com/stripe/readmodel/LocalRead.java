@@ -0,0 +1,13 @@
+package com.stripe.readmodel;
+
+import lombok.Value;
+
+/**
+ * A result answered from the read model, with the number of seconds since the model was last
+ * brought in line with Stripe (by a backfill or a webhook event).
+ */
+@Value
+public class LocalRead<T> {
+    T value;
+    long ageSeconds;
+}
@@ -0,0 +1,303 @@
+package com.stripe.readmodel;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.account.StripeAccountRegistry;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.model.Event;
+import com.stripe.model.HasId;
+import com.stripe.model.Invoice;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+import com.stripe.model.SubscriptionItem;
+import com.stripe.param.CustomerListParams;
+import com.stripe.param.InvoiceListParams;
+import com.stripe.param.SubscriptionItemListParams;
+import com.stripe.param.SubscriptionListParams;
+import com.stripe.service.InvoiceService;
+import com.stripe.service.StripeProductRegistry;
+import com.stripe.service.SubscriptionService;
+import com.stripe.webhook.EventObjects;
+import com.stripe.webhook.StripeEventHandler;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Local copy of the customers, subscriptions and invoices of every account that receives
+ * webhooks, so the list endpoints can answer without calling Stripe. Each account is filled by a
+ * backfill at startup and at every refresh interval, and kept current in between by webhook
+ * events. Accounts without a webhook secret are not projected, their reads keep going to Stripe.
+ */
+@Component
+public class ReadModel implements StripeEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadModel.class);
+
+    private static final long PAGE_SIZE = 100L;
+
+    private final StripeProductRegistry productRegistry;
+
+    private final ExecutorService stripeExecutor;
+
+    private final ReadModelStore store;
+
+    private final Map<String, StripeAccount> accounts = new LinkedHashMap<>();
+
+    private final Map<String, AccountProjection> projections = new LinkedHashMap<>();
+
+    public ReadModel(StripeAccountRegistry accountRegistry,
+                     StripeProductRegistry productRegistry,
+                     @Qualifier("stripeExecutor") ExecutorService stripeExecutor,
+                     @Value("${stripe.read-model.enabled:true}") boolean enabled,
+                     @Value("${stripe.read-model.directory:}") String directory) {
+        this.productRegistry = productRegistry;
+        this.stripeExecutor = stripeExecutor;
+        this.store = directory.isEmpty() ? null : new ReadModelStore(Path.of(directory));
+
+        if (enabled) {
+            for (StripeAccount account : accountRegistry.getAccounts()) {
+                // Without webhooks the copy would silently go stale
+                if (!account.getWebhookSecret().isEmpty()) {
+                    accounts.put(account.getId(), account);
+                    projections.put(account.getId(), new AccountProjection());
+                }
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (StripeAccount account : accounts.values()) {
+            restore(account);
+            stripeExecutor.execute(() -> backfill(account));
+        }
+    }
+
+    @Scheduled(initialDelayString = "${stripe.read-model.refresh-interval-ms:21600000}",
+            fixedDelayString = "${stripe.read-model.refresh-interval-ms:21600000}")
+    public void refresh() {
+        // Off the scheduler thread, a backfill of a large account takes minutes
+        for (StripeAccount account : accounts.values()) {
+            stripeExecutor.execute(() -> backfill(account));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stripe.read-model.snapshot-interval-ms:60000}")
+    @PreDestroy
+    public void persist() {
+        if (store == null) {
+            return;
+        }
+        projections.forEach((accountId, projection) -> {
+            try {
+                String json = projection.exportIfDirty(store::serialize);
+                if (json != null) {
+                    store.save(accountId, json);
+                }
+            } catch (IOException e) {
+                log.warn("Could not write the read model snapshot of account {}", accountId, e);
+            }
+        });
+    }
+
+    /**
+     * @return the subscription rows of the customer with this email, or null if the account is
+     * not served locally (yet) or a product is not mapped to its app_id yet. The Stripe path
+     * then looks the product up, so both sources return the same rows.
+     */
+    public LocalRead<List<Map<String, String>>> subscriptionRows(StripeAccount account, String email) {
+        AccountProjection projection = servedProjection(account);
+        if (projection == null) {
+            return null;
+        }
+
+        String customerId = projection.customerIdByEmail(email);
+        if (customerId == null) {
+            return new LocalRead<>(Collections.emptyList(), projection.ageSeconds());
+        }
+
+        long now = System.currentTimeMillis();
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (SubscriptionView subscription : projection.subscriptionsOf(customerId)) {
+            for (SubscriptionView.Item item : subscription.getItems()) {
+                String appId = productRegistry.appIdOf(item.getProductId());
+                if (appId == null) {
+                    return null;
+                }
+                rows.add(SubscriptionService.toRow(subscription.getId(), subscription.getStartDate(),
+                        subscription.getCurrentPeriodEnd(), subscription.getTrialEnd(), item.getUnitAmountDecimal(),
+                        appId, now));
+            }
+        }
+        return new LocalRead<>(rows, projection.ageSeconds());
+    }
+
+    /**
+     * @return the invoice rows of the customer with this email, or null if the account is not
+     * served locally (yet)
+     */
+    public LocalRead<List<Map<String, String>>> invoiceRows(StripeAccount account, String email) {
+        AccountProjection projection = servedProjection(account);
+        if (projection == null) {
+            return null;
+        }
+
+        String customerId = projection.customerIdByEmail(email);
+        if (customerId == null) {
+            return new LocalRead<>(Collections.emptyList(), projection.ageSeconds());
+        }
+
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (InvoiceView invoice : projection.invoicesOf(customerId)) {
+            rows.add(InvoiceService.toRow(invoice.getNumber(), invoice.getTotal(), invoice.getInvoicePdf()));
+        }
+        return new LocalRead<>(rows, projection.ageSeconds());
+    }
+
+    @Override
+    public void handle(StripeAccount account, Event event) {
+        handleBatch(account, List.of(event));
+    }
+
+    /**
+     * Applies the events under one write lock and marks the projection for the next snapshot
+     * once, so readers and the snapshot writer are not held up once per event.
+     */
+    @Override
+    public void handleBatch(StripeAccount account, List<Event> events) {
+        AccountProjection projection = projections.get(account.getId());
+        if (projection == null) {
+            return;
+        }
+
+        // Views are built before taking the lock, as a subscription view may need Stripe calls
+        List<Runnable> updates = new ArrayList<>(events.size());
+        for (Event event : events) {
+            Runnable update = update(account, projection, event);
+            if (update != null) {
+                updates.add(update);
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        projection.writeBatch(() -> updates.forEach(Runnable::run));
+        projection.touch();
+    }
+
+    /**
+     * @return the change the event makes to the projection, or null if it makes none
+     */
+    private Runnable update(StripeAccount account, AccountProjection projection, Event event) {
+        StripeObject object = EventObjects.dataObject(event);
+        // Previews such as invoice.upcoming describe objects that do not exist yet
+        if (!(object instanceof HasId) || ((HasId) object).getId() == null) {
+            return null;
+        }
+        long version = event.getCreated();
+        try {
+            if (object instanceof Customer customer) {
+                CustomerView view = "customer.deleted".equals(event.getType()) ? null : CustomerView.of(customer);
+                return () -> projection.putCustomer(customer.getId(), view, version);
+            } else if (object instanceof Subscription subscription) {
+                // Canceled subscriptions are not listed, like in Stripe's default subscription list
+                SubscriptionView view = "canceled".equals(subscription.getStatus()) ? null
+                        : SubscriptionView.of(subscription, itemsOf(account, subscription));
+                return () -> projection.putSubscription(subscription.getId(), view, version);
+            } else if (object instanceof Invoice invoice) {
+                InvoiceView view = "invoice.deleted".equals(event.getType()) ? null : InvoiceView.of(invoice);
+                return () -> projection.putInvoice(invoice.getId(), view, version);
+            }
+            return null;
+        } catch (StripeException e) {
+            // The next backfill picks up the change
+            log.warn("Could not apply event {} ({}) to the read model", event.getId(), event.getType(), e);
+            return null;
+        }
+    }
+
+    private AccountProjection servedProjection(StripeAccount account) {
+        AccountProjection projection = projections.get(account.getId());
+        return projection != null && projection.isReady() ? projection : null;
+    }
+
+    private void restore(StripeAccount account) {
+        if (store == null) {
+            return;
+        }
+        try {
+            AccountProjection.State state = store.load(account.getId());
+            if (state != null) {
+                projections.get(account.getId()).restore(state);
+                log.info("Restored the read model of {} from its snapshot", account);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read the read model snapshot of {}, waiting for the backfill", account, e);
+        }
+    }
+
+    private void backfill(StripeAccount account) {
+        AccountProjection projection = projections.get(account.getId());
+        if (!projection.startBackfill()) {
+            return;
+        }
+
+        long version = Instant.now().getEpochSecond();
+        try {
+            for (Customer customer : Customer.list(CustomerListParams.builder().setLimit(PAGE_SIZE).build(),
+                    account.options()).autoPagingIterable()) {
+                projection.putCustomer(customer.getId(), CustomerView.of(customer), version);
+            }
+            for (Subscription subscription : Subscription.list(SubscriptionListParams.builder().setLimit(PAGE_SIZE).build(),
+                    account.options()).autoPagingIterable()) {
+                projection.putSubscription(subscription.getId(),
+                        SubscriptionView.of(subscription, itemsOf(account, subscription)), version);
+            }
+            for (Invoice invoice : Invoice.list(InvoiceListParams.builder().setLimit(PAGE_SIZE).build(),
+                    account.options()).autoPagingIterable()) {
+                projection.putInvoice(invoice.getId(), InvoiceView.of(invoice), version);
+            }
+
+            projection.completeBackfill(version);
+            log.info("Read model of {} is in sync with Stripe", account);
+        } catch (StripeException | RuntimeException e) {
+            // Reads keep using the previous state, or Stripe if there is none
+            log.warn("Backfill of the read model of {} failed", account, e);
+        } finally {
+            projection.endBackfill();
+        }
+    }
+
+    private static List<SubscriptionItem> itemsOf(StripeAccount account, Subscription subscription) throws StripeException {
+        if (!Boolean.TRUE.equals(subscription.getItems().getHasMore())) {
+            return subscription.getItems().getData();
+        }
+
+        List<SubscriptionItem> items = new ArrayList<>();
+        for (SubscriptionItem item : SubscriptionItem.list(SubscriptionItemListParams.builder()
+                .setSubscription(subscription.getId())
+                .setLimit(PAGE_SIZE)
+                .build(), account.options()).autoPagingIterable()) {
+            items.add(item);
+        }
+        return items;
+    }
+}
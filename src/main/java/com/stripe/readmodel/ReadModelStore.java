@@ -0,0 +1,59 @@
+package com.stripe.readmodel;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Persists account projections as one JSON file per account, so a restart can serve reads from
+ * the last snapshot while the backfill runs.
+ */
+class ReadModelStore {
+
+    private final Gson gson = new Gson();
+
+    private final Path directory;
+
+    ReadModelStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the persisted state of the account, or null if there is none
+     */
+    AccountProjection.State load(String accountId) throws IOException {
+        Path file = file(accountId);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, AccountProjection.State.class);
+        }
+    }
+
+    String serialize(AccountProjection.State state) {
+        return gson.toJson(state);
+    }
+
+    void save(String accountId, String json) throws IOException {
+        Files.createDirectories(directory);
+        Path file = file(accountId);
+
+        // Write next to the target and move it in place, so a crash never leaves a truncated snapshot
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(json);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path file(String accountId) {
+        return directory.resolve(accountId + ".json");
+    }
+}
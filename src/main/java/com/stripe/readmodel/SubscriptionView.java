@@ -0,0 +1,34 @@
+package com.stripe.readmodel;
+
+import com.stripe.model.Subscription;
+import com.stripe.model.SubscriptionItem;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Value
+public class SubscriptionView {
+    String id;
+    String customerId;
+    long created;
+    long startDate;
+    long currentPeriodEnd;
+    Long trialEnd;
+    List<Item> items;
+
+    @Value
+    public static class Item {
+        String productId;
+        String unitAmountDecimal;
+    }
+
+    static SubscriptionView of(Subscription subscription, List<SubscriptionItem> items) {
+        List<Item> itemViews = new ArrayList<>(items.size());
+        for (SubscriptionItem item : items) {
+            itemViews.add(new Item(item.getPrice().getProduct(), item.getPrice().getUnitAmountDecimal().toString()));
+        }
+        return new SubscriptionView(subscription.getId(), subscription.getCustomer(), subscription.getCreated(),
+                subscription.getStartDate(), subscription.getCurrentPeriodEnd(), subscription.getTrialEnd(), itemViews);
+    }
+}
@@ -0,0 +1,29 @@
+package com.stripe.repository;
+
+/**
+ * Read-only product catalog. Entries are addressed by a dense index so that hot paths can
+ * resolve an id once and then read the price columns without creating objects.
+ */
+public interface Catalog {
+
+    /**
+     * @return the index of the product, or -1 if the id is not in the catalog
+     */
+    int indexOf(String id);
+
+    String id(int index);
+
+    String name(int index);
+
+    /**
+     * @return the unit price in the currency's minor unit (e.g. cents)
+     */
+    long unitAmount(int index);
+
+    /**
+     * @return lower-case ISO currency code
+     */
+    String currency(int index);
+
+    int size();
+}
@@ -0,0 +1,32 @@
+package com.stripe.repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Converts a CSV or JSON catalog into the binary format read by {@link MappedCatalog}.
+ *
+ * <pre>
+ * java -cp app.jar -Dloader.main=com.stripe.repository.CatalogConverter \
+ *     org.springframework.boot.loader.launch.PropertiesLauncher products.csv products.bin
+ * </pre>
+ */
+public class CatalogConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CatalogConverter <input.csv|input.json> <output.bin>");
+            System.exit(2);
+        }
+
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+
+        List<CatalogItem> items = CatalogFiles.read(input);
+        MappedCatalog.write(items, output);
+
+        System.out.println("Wrote " + items.size() + " products to " + output);
+    }
+}
@@ -0,0 +1,116 @@
+package com.stripe.repository;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsers for the text catalog formats.
+ */
+public final class CatalogFiles {
+
+    private CatalogFiles() {
+    }
+
+    /**
+     * Reads a CSV file with the columns {@code id,name,unitAmount,currency}. Blank lines, lines
+     * starting with '#' and a leading header row are skipped. The name column may contain commas.
+     */
+    public static List<CatalogItem> readCsv(Path file) throws IOException {
+        List<CatalogItem> items = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || (lineNumber == 1 && line.startsWith("id,"))) {
+                    continue;
+                }
+                items.add(parseCsvLine(line, file, lineNumber));
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Reads a JSON array of {@code {"id", "name", "unitAmount", "currency"}} objects. The file is
+     * streamed, so only the resulting items are held in memory.
+     */
+    public static List<CatalogItem> readJson(Path file) throws IOException {
+        List<CatalogItem> items = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String id = null;
+                String name = null;
+                Long unitAmount = null;
+                String currency = null;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "id":
+                            id = reader.nextString();
+                            break;
+                        case "name":
+                            name = reader.nextString();
+                            break;
+                        case "unitAmount":
+                            unitAmount = reader.nextLong();
+                            break;
+                        case "currency":
+                            currency = reader.nextString();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (id == null || name == null || unitAmount == null || currency == null) {
+                    throw new IOException(file + ": item " + items.size() + " needs id, name, unitAmount and currency");
+                }
+                items.add(new CatalogItem(id, name, unitAmount, currency));
+            }
+            reader.endArray();
+        }
+
+        return items;
+    }
+
+    /**
+     * Reads a CSV or JSON catalog, chosen by file extension.
+     */
+    public static List<CatalogItem> read(Path file) throws IOException {
+        return file.toString().endsWith(".json") ? readJson(file) : readCsv(file);
+    }
+
+    private static CatalogItem parseCsvLine(String line, Path file, int lineNumber) throws IOException {
+        int first = line.indexOf(',');
+        int last = line.lastIndexOf(',');
+        int secondLast = last > 0 ? line.lastIndexOf(',', last - 1) : -1;
+        if (first < 0 || secondLast <= first) {
+            throw new IOException(file + ":" + lineNumber + ": expected id,name,unitAmount,currency");
+        }
+
+        try {
+            return new CatalogItem(
+                    line.substring(0, first).trim(),
+                    line.substring(first + 1, secondLast).trim(),
+                    Long.parseLong(line.substring(secondLast + 1, last).trim()),
+                    line.substring(last + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ":" + lineNumber + ": unit amount must be an integer in minor units", e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.stripe.repository;
+
+import lombok.Value;
+
+@Value
+public class CatalogItem {
+    String id;
+    String name;
+    // Price in the currency's minor unit, e.g. cents for usd
+    long unitAmount;
+    String currency;
+}
@@ -0,0 +1,66 @@
+package com.stripe.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Loads the product catalog from a local file at startup and swaps in a new version whenever
+ * the file changes. When no file is configured the built-in sample catalog is used.
+ */
+@Component
+public class CatalogLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogLoader.class);
+
+    private final String catalogFile;
+
+    private volatile FileTime loadedVersion;
+
+    public CatalogLoader(@Value("${catalog.file:}") String catalogFile) {
+        this.catalogFile = catalogFile;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() throws IOException {
+        if (!catalogFile.isEmpty()) {
+            reload(Paths.get(catalogFile));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.reload-interval-ms:10000}")
+    public void reloadIfChanged() {
+        if (catalogFile.isEmpty()) {
+            return;
+        }
+
+        Path path = Paths.get(catalogFile);
+        try {
+            if (!Files.getLastModifiedTime(path).equals(loadedVersion)) {
+                reload(path);
+            }
+        } catch (IOException e) {
+            // Keep serving the previous catalog version
+            log.warn("Could not reload catalog from {}", path, e);
+        }
+    }
+
+    private synchronized void reload(Path path) throws IOException {
+        FileTime version = Files.getLastModifiedTime(path);
+        // Binary catalogs are memory-mapped, text catalogs are parsed onto the heap
+        Catalog catalog = path.toString().endsWith(".bin") ? MappedCatalog.open(path) : HeapCatalog.fromFile(path);
+        ProductDAO.swap(catalog);
+        loadedVersion = version;
+        log.info("Loaded {} products from {}", catalog.size(), path);
+    }
+}
@@ -0,0 +1,79 @@
+package com.stripe.repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable in-memory catalog, stored column-wise with a hash index on the product id.
+ */
+public final class HeapCatalog implements Catalog {
+
+    private final Map<String, Integer> index;
+    private final String[] ids;
+    private final String[] names;
+    private final long[] unitAmounts;
+    private final String[] currencies;
+
+    public HeapCatalog(List<CatalogItem> items) {
+        int size = items.size();
+        this.index = new HashMap<>(size * 4 / 3 + 1);
+        this.ids = new String[size];
+        this.names = new String[size];
+        this.unitAmounts = new long[size];
+        this.currencies = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            CatalogItem item = items.get(i);
+            if (index.put(item.getId(), i) != null) {
+                throw new IllegalArgumentException("Duplicate product id in catalog: " + item.getId());
+            }
+            ids[i] = item.getId();
+            names[i] = item.getName();
+            unitAmounts[i] = item.getUnitAmount();
+            // Interned so that currencies can be grouped by reference on the pricing path
+            currencies[i] = item.getCurrency().toLowerCase(Locale.ROOT).intern();
+        }
+    }
+
+    /**
+     * Reads a CSV or JSON catalog file, see {@link CatalogFiles}.
+     */
+    public static HeapCatalog fromFile(Path file) throws IOException {
+        return new HeapCatalog(CatalogFiles.read(file));
+    }
+
+    @Override
+    public int indexOf(String id) {
+        Integer i = index.get(id);
+        return i != null ? i : -1;
+    }
+
+    @Override
+    public String id(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public String name(int index) {
+        return names[index];
+    }
+
+    @Override
+    public long unitAmount(int index) {
+        return unitAmounts[index];
+    }
+
+    @Override
+    public String currency(int index) {
+        return currencies[index];
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,274 @@
+package com.stripe.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Catalog backed by a memory-mapped binary file. Only the small currency table is read at open
+ * time; everything else stays in the page cache, so heap use does not grow with the catalog and
+ * {@link #indexOf(String)}, {@link #unitAmount(int)} and {@link #currency(int)} do not allocate.
+ *
+ * <pre>
+ * header     magic, version, count, slots, idWidth, currencyCount   (6 x int)
+ *            names offset                                           (long)
+ * currencies currencyCount x 3 ASCII bytes
+ * slots      slots x int, open-addressing hash table of record index + 1 (0 = empty)
+ * records    count x (id bytes zero-padded to idWidth, unitAmount long,
+ *                     nameOffset int, nameLength int, currency index int)
+ * names      UTF-8 product names
+ * </pre>
+ *
+ * Product ids must be ASCII. Replace a mapped file with an atomic rename rather than rewriting it
+ * in place, otherwise readers of the old version see the new bytes.
+ */
+public final class MappedCatalog implements Catalog {
+
+    private static final int MAGIC = 0x53434154; // "SCAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6 * 4 + 8;
+    private static final int CURRENCY_SIZE = 3;
+    private static final int MAX_ID_WIDTH = 255;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int slotMask;
+    private final int idWidth;
+    private final int recordSize;
+    private final int slotsOffset;
+    private final int recordsOffset;
+    private final long namesOffset;
+    private final String[] currencies;
+
+    private MappedCatalog(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a version " + VERSION + " binary catalog");
+        }
+        this.count = buffer.getInt(8);
+        int slots = buffer.getInt(12);
+        this.slotMask = slots - 1;
+        this.idWidth = buffer.getInt(16);
+        int currencyCount = buffer.getInt(20);
+        this.namesOffset = buffer.getLong(24);
+        this.recordSize = idWidth + 8 + 4 + 4 + 4;
+
+        this.currencies = new String[currencyCount];
+        byte[] code = new byte[CURRENCY_SIZE];
+        for (int i = 0; i < currencyCount; i++) {
+            for (int j = 0; j < CURRENCY_SIZE; j++) {
+                code[j] = buffer.get(HEADER_SIZE + i * CURRENCY_SIZE + j);
+            }
+            currencies[i] = new String(code, StandardCharsets.US_ASCII).intern();
+        }
+
+        this.slotsOffset = HEADER_SIZE + currencyCount * CURRENCY_SIZE;
+        this.recordsOffset = slotsOffset + slots * 4;
+    }
+
+    public static MappedCatalog open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than a single 2 GB mapping");
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedCatalog(buffer);
+        }
+    }
+
+    @Override
+    public int indexOf(String id) {
+        if (id == null || id.length() > idWidth) {
+            return -1;
+        }
+
+        int slot = hash(id) & slotMask;
+        while (true) {
+            int entry = buffer.getInt(slotsOffset + slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            int index = entry - 1;
+            if (idEquals(index, id)) {
+                return index;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    @Override
+    public String id(int index) {
+        int offset = recordOffset(index);
+        int length = 0;
+        while (length < idWidth && buffer.get(offset + length) != 0) {
+            length++;
+        }
+        return readString(offset, length, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String name(int index) {
+        int offset = recordOffset(index) + idWidth + 8;
+        int nameOffset = buffer.getInt(offset);
+        int nameLength = buffer.getInt(offset + 4);
+        return readString((int) (namesOffset + nameOffset), nameLength, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long unitAmount(int index) {
+        return buffer.getLong(recordOffset(index) + idWidth);
+    }
+
+    @Override
+    public String currency(int index) {
+        return currencies[buffer.getInt(recordOffset(index) + idWidth + 16)];
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Catalog index " + index);
+        }
+        return recordsOffset + index * recordSize;
+    }
+
+    private boolean idEquals(int index, String id) {
+        int offset = recordsOffset + index * recordSize;
+        int length = id.length();
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != id.charAt(i)) {
+                return false;
+            }
+        }
+        return length == idWidth || buffer.get(offset + length) == 0;
+    }
+
+    private String readString(int offset, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    // FNV-1a over the UTF-16 chars, so lookups can hash the String without encoding it
+    private static int hash(String id) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Writes items in the binary format. The file is written next to the target and renamed into
+     * place, so a running {@link CatalogLoader} never maps a half-written file.
+     */
+    public static void write(List<CatalogItem> items, Path file) throws IOException {
+        int count = items.size();
+        int slots = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+
+        int idWidth = 1;
+        Map<String, Integer> currencyIndex = new LinkedHashMap<>();
+        List<byte[]> names = new ArrayList<>(count);
+        long namesSize = 0;
+        for (CatalogItem item : items) {
+            String id = item.getId();
+            for (int i = 0; i < id.length(); i++) {
+                if (id.charAt(i) == 0 || id.charAt(i) > 0x7f) {
+                    throw new IllegalArgumentException("Product ids must be ASCII: " + id);
+                }
+            }
+            idWidth = Math.max(idWidth, id.length());
+
+            String currency = item.getCurrency().toLowerCase(Locale.ROOT);
+            if (currency.length() != CURRENCY_SIZE) {
+                throw new IllegalArgumentException("Currency must be a 3-letter ISO code: " + currency);
+            }
+            currencyIndex.putIfAbsent(currency, currencyIndex.size());
+
+            byte[] name = item.getName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            namesSize += name.length;
+        }
+        if (idWidth > MAX_ID_WIDTH) {
+            throw new IllegalArgumentException("Product ids longer than " + MAX_ID_WIDTH + " characters are not supported");
+        }
+
+        int[] table = new int[slots];
+        for (int i = 0; i < count; i++) {
+            int slot = hash(items.get(i).getId()) & (slots - 1);
+            while (table[slot] != 0) {
+                if (items.get(table[slot] - 1).getId().equals(items.get(i).getId())) {
+                    throw new IllegalArgumentException("Duplicate product id in catalog: " + items.get(i).getId());
+                }
+                slot = (slot + 1) & (slots - 1);
+            }
+            table[slot] = i + 1;
+        }
+
+        int recordSize = idWidth + 8 + 4 + 4 + 4;
+        long namesOffset = HEADER_SIZE + (long) currencyIndex.size() * CURRENCY_SIZE + (long) slots * 4 + (long) count * recordSize;
+        if (namesOffset + namesSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Catalog does not fit into a single 2 GB mapping");
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(slots);
+            out.writeInt(idWidth);
+            out.writeInt(currencyIndex.size());
+            out.writeLong(namesOffset);
+
+            for (String currency : currencyIndex.keySet()) {
+                out.write(currency.getBytes(StandardCharsets.US_ASCII));
+            }
+
+            for (int entry : table) {
+                out.writeInt(entry);
+            }
+
+            int nameOffset = 0;
+            for (int i = 0; i < count; i++) {
+                CatalogItem item = items.get(i);
+                byte[] id = item.getId().getBytes(StandardCharsets.US_ASCII);
+                out.write(id);
+                out.write(new byte[idWidth - id.length]);
+                out.writeLong(item.getUnitAmount());
+                out.writeInt(nameOffset);
+                out.writeInt(names.get(i).length);
+                out.writeInt(currencyIndex.get(item.getCurrency().toLowerCase(Locale.ROOT)));
+                nameOffset += names.get(i).length;
+            }
+
+            for (byte[] name : names) {
+                out.write(name);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
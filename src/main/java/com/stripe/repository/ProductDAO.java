@@ -1,58 +1,32 @@
 package com.stripe.repository;
 
-import com.stripe.model.Price;
-import com.stripe.model.Product;
-
-import java.math.BigDecimal;
+import java.util.Arrays;
 
 public class ProductDAO {
 
-    static Product[] products;
-
-    static {
-        products = new Product[4];
-
-        Product sampleProduct = new Product();
-        Price samplePrice = new Price();
-
-        sampleProduct.setName("Puma Shoes");
-        sampleProduct.setId("shoe");
-        samplePrice.setCurrency("usd");
-        samplePrice.setUnitAmountDecimal(BigDecimal.valueOf(2000));
-        sampleProduct.setDefaultPriceObject(samplePrice);
-        products[0] = sampleProduct;
+    // The current catalog version. Readers never lock; a reload builds a new catalog and swaps it in.
+    private static volatile Catalog catalog = new HeapCatalog(Arrays.asList(
+            new CatalogItem("shoe", "Puma Shoes", 2000, "usd"),
+            new CatalogItem("slippers", "Nike Sliders", 1000, "usd"),
+            new CatalogItem("music", "Apple Music+", 499, "usd")
+    ));
 
-        sampleProduct = new Product();
-        samplePrice = new Price();
-
-        sampleProduct.setName("Nike Sliders");
-        sampleProduct.setId("slippers");
-        samplePrice.setCurrency("usd");
-        samplePrice.setUnitAmountDecimal(BigDecimal.valueOf(1000));
-        sampleProduct.setDefaultPriceObject(samplePrice);
-        products[1] = sampleProduct;
-
-        sampleProduct = new Product();
-        samplePrice = new Price();
-
-        sampleProduct.setName("Apple Music+");
-        sampleProduct.setId("music");
-        samplePrice.setCurrency("usd");
-        samplePrice.setUnitAmountDecimal(BigDecimal.valueOf(499));
-        sampleProduct.setDefaultPriceObject(samplePrice);
-        products[2] = sampleProduct;
+    public static Catalog catalog() {
+        return catalog;
+    }
 
+    public static void swap(Catalog newCatalog) {
+        catalog = newCatalog;
     }
 
-    public static Product getProduct(String id) {
+    public static CatalogItem getProduct(String id) {
+        Catalog current = catalog;
+        int index = current.indexOf(id);
 
-        if ("shoe".equals(id)) {
-            return products[0];
-        } else if ("slippers".equals(id)) {
-            return products[1];
-        } else if ("music".equals(id)) {
-            return products[2];
-        } else return new Product();
+        if (index < 0) {
+            throw new UnknownProductException(id);
+        }
 
+        return new CatalogItem(current.id(index), current.name(index), current.unitAmount(index), current.currency(index));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package com.stripe.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownProductException extends RuntimeException {
+
+    public UnknownProductException(String id) {
+        super("Unknown product id: " + id);
+    }
+}
@@ -0,0 +1,163 @@
+package com.stripe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stripe.CustomerUtil;
+import com.stripe.account.StripeAccount;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.pricing.CartItem;
+import com.stripe.utils.LimitedExecutor;
+import com.stripe.utils.StripeFutures;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs many checkouts of one request. Every distinct customer is looked up (or created) once for
+ * the whole batch, and each order's checkout starts as soon as its customer is known, so the
+ * Stripe calls of different orders overlap. At most {@code stripe.bulk.parallelism} calls run
+ * at once, on the shared stripe-io executor.
+ */
+@Service
+public class BulkCheckoutService {
+
+    public enum Mode {
+        // A Checkout session per order, the result is its URL
+        HOSTED,
+        // A PaymentIntent (or a finalized invoice) per order, the result is its client secret
+        INTEGRATED
+    }
+
+    @lombok.Value
+    public static class Order {
+        String email;
+        String name;
+        List<CartItem> items;
+        boolean invoiceNeeded;
+        String coupon;
+    }
+
+    private final CustomerUtil customerUtil;
+
+    private final CheckoutService checkoutService;
+
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService stripeExecutor;
+
+    private final int parallelism;
+
+    public BulkCheckoutService(CustomerUtil customerUtil, CheckoutService checkoutService, ObjectMapper objectMapper,
+                               @Qualifier("stripeExecutor") ExecutorService stripeExecutor,
+                               @Value("${stripe.bulk.parallelism:8}") int parallelism) {
+        this.customerUtil = customerUtil;
+        this.checkoutService = checkoutService;
+        this.objectMapper = objectMapper;
+        this.stripeExecutor = stripeExecutor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs the orders and writes one JSON line per order as it completes, so results arrive in
+     * completion order. Each line has the order's index in the batch, its customer email, and
+     * status and details as in {@link com.stripe.utils.Response}: the URL or client secret, or
+     * the reason the order failed. A failed order does not stop the others.
+     *
+     * @param idempotencyKey key of the whole batch, each order uses it with its index appended. A
+     *                       batch without one gets a random key, so identical orders in it still
+     *                       create separate checkouts.
+     */
+    public void streamCheckouts(StripeAccount account, List<Order> orders, Mode mode, String idempotencyKey,
+                                OutputStream out) throws IOException {
+        LimitedExecutor executor = new LimitedExecutor(stripeExecutor, parallelism);
+        String batchKey = idempotencyKey != null ? idempotencyKey : "bulk-" + UUID.randomUUID();
+        BlockingQueue<Map<String, Object>> results = new LinkedBlockingQueue<>();
+
+        // Normalized email -> the batch's single lookup of that customer
+        Map<String, CompletableFuture<Customer>> customers = new HashMap<>();
+
+        for (int i = 0; i < orders.size(); i++) {
+            int index = i;
+            Order order = orders.get(i);
+            if (order.getEmail() == null || order.getEmail().isBlank()) {
+                results.add(row(index, order, false, "Customer email is missing"));
+                continue;
+            }
+            if (order.getItems() == null || order.getItems().isEmpty()) {
+                results.add(row(index, order, false, "Order has no items"));
+                continue;
+            }
+
+            CompletableFuture<Customer> customer = customers.computeIfAbsent(
+                    order.getEmail().trim().toLowerCase(Locale.ROOT),
+                    email -> StripeFutures.supply(() -> customerUtil.findOrCreateCustomer(account, order.getEmail(),
+                            order.getName()), executor));
+
+            String key = batchKey + ':' + index;
+
+            // Checkouts go ahead of pending customer lookups, so results start flowing early. The
+            // checkout finds the customer in the lookup cache the batch has just filled.
+            customer.thenApplyAsync(StripeFutures.unchecked((Customer c) -> checkout(account, order, mode, key)), executor.first())
+                    .whenComplete((details, failure) -> results.add(failure == null
+                            ? row(index, order, true, details)
+                            : row(index, order, false, reason(failure))));
+        }
+
+        try {
+            for (int written = 0; written < orders.size(); ) {
+                Map<String, Object> result = results.take();
+                do {
+                    out.write(objectMapper.writeValueAsBytes(result));
+                    out.write('\n');
+                    written++;
+                } while ((result = results.poll()) != null);
+                // Send what is complete, without a flush per line when many finish together
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bulk checkout results");
+        } finally {
+            // The client is gone or everything is written; orders not started yet are dropped
+            executor.shutdown();
+        }
+    }
+
+    private String checkout(StripeAccount account, Order order, Mode mode, String idempotencyKey) throws StripeException {
+        if (mode == Mode.INTEGRATED) {
+            return checkoutService.integratedCheckout(account, order.getEmail(), order.getName(), order.getItems(),
+                    order.isInvoiceNeeded(), order.getCoupon(), idempotencyKey);
+        }
+        return checkoutService.hostedCheckout(account, order.getEmail(), order.getName(), order.getItems(),
+                order.isInvoiceNeeded(), idempotencyKey);
+    }
+
+    private static Map<String, Object> row(int index, Order order, boolean status, String details) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("index", index);
+        row.put("customerEmail", order.getEmail());
+        row.put("status", status);
+        row.put("details", details);
+        return row;
+    }
+
+    private static String reason(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
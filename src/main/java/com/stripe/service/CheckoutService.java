@@ -0,0 +1,274 @@
+package com.stripe.service;
+
+import com.stripe.CustomerUtil;
+import com.stripe.account.StripeAccount;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Coupon;
+import com.stripe.model.Customer;
+import com.stripe.model.PaymentIntent;
+import com.stripe.model.checkout.Session;
+import com.stripe.param.PaymentIntentCreateParams;
+import com.stripe.param.checkout.SessionCreateParams;
+import com.stripe.pricing.CartItem;
+import com.stripe.pricing.CouponTerms;
+import com.stripe.pricing.InvalidCartException;
+import com.stripe.pricing.PricingEngine;
+import com.stripe.pricing.Quote;
+import com.stripe.repository.ProductDAO;
+import com.stripe.utils.StripeFutures;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Checkout flows shared by the blocking and the asynchronous endpoints. The async variants run
+ * the Stripe calls on the stripe-io executor and overlap independent steps: the customer lookup
+ * runs while line items are priced and invoice products are resolved.
+ */
+@Service
+public class CheckoutService {
+
+    private final String clientBaseUrl;
+
+    private final CustomerUtil customerUtil;
+
+    private final InvoiceService invoiceService;
+
+    private final IdempotencyService idempotency;
+
+    private final LineItemCache lineItemCache;
+
+    private final CouponCache couponCache;
+
+    private final ExecutorService stripeExecutor;
+
+    public CheckoutService(@Value("${client.base-url}") String clientBaseUrl,
+                           CustomerUtil customerUtil,
+                           InvoiceService invoiceService,
+                           IdempotencyService idempotency,
+                           LineItemCache lineItemCache,
+                           CouponCache couponCache,
+                           @Qualifier("stripeExecutor") ExecutorService stripeExecutor) {
+        this.clientBaseUrl = clientBaseUrl;
+        this.customerUtil = customerUtil;
+        this.invoiceService = invoiceService;
+        this.idempotency = idempotency;
+        this.lineItemCache = lineItemCache;
+        this.couponCache = couponCache;
+        this.stripeExecutor = stripeExecutor;
+    }
+
+    public String hostedCheckout(StripeAccount account, String email, String name, List<CartItem> items,
+                                 boolean invoiceNeeded, String idempotencyKey) throws StripeException {
+        String key = idempotency.key(account, idempotencyKey, "checkout-hosted", email, itemIds(items), invoiceNeeded);
+
+        // Start by finding an existing customer record from Stripe or creating a new one if needed
+        Customer customer = customerUtil.findOrCreateCustomer(account, email, name);
+
+        return createSession(account, customer.getId(), SessionCreateParams.Mode.PAYMENT, lineItems(items, false),
+                invoiceNeeded, null, key);
+    }
+
+    public CompletableFuture<String> hostedCheckoutAsync(StripeAccount account, String email, String name,
+                                                         List<CartItem> items, boolean invoiceNeeded,
+                                                         String idempotencyKey) {
+        String key = idempotency.key(account, idempotencyKey, "checkout-hosted", email, itemIds(items), invoiceNeeded);
+
+        CompletableFuture<Customer> customer = StripeFutures.supply(
+                () -> customerUtil.findOrCreateCustomer(account, email, name), stripeExecutor);
+
+        // Priced on this thread while the customer lookup is in flight
+        List<SessionCreateParams.LineItem> lineItems = lineItems(items, false);
+
+        return customer.thenApplyAsync(StripeFutures.unchecked((Customer c) -> createSession(account, c.getId(),
+                SessionCreateParams.Mode.PAYMENT, lineItems, invoiceNeeded, null, key)), stripeExecutor);
+    }
+
+    /**
+     * @param coupon id of a coupon to apply, or null for none
+     */
+    public String integratedCheckout(StripeAccount account, String email, String name, List<CartItem> items,
+                                     boolean invoiceNeeded, String coupon, String idempotencyKey) throws StripeException {
+        String key = idempotency.key(account, idempotencyKey, "checkout-integrated", email, itemIds(items), invoiceNeeded, coupon);
+
+        // Start by finding existing customer or creating a new one if needed
+        Customer customer = customerUtil.findOrCreateCustomer(account, email, name);
+
+        PaymentIntent paymentIntent;
+        // Create a PaymentIntent and send it's client secret to the client
+        if (!invoiceNeeded) {
+            paymentIntent = createPaymentIntent(account, customer.getId(), quote(account, items, coupon), key);
+        } else {
+            // If invoice is needed, create and finalize an invoice, which creates the PaymentIntent automatically
+            paymentIntent = createInvoicePayment(account, customer, items, couponId(account, coupon), key);
+        }
+
+        // Send the client secret from the payment intent to the client
+        return paymentIntent.getClientSecret();
+    }
+
+    public CompletableFuture<String> integratedCheckoutAsync(StripeAccount account, String email, String name,
+                                                             List<CartItem> items, boolean invoiceNeeded,
+                                                             String coupon, String idempotencyKey) {
+        String key = idempotency.key(account, idempotencyKey, "checkout-integrated", email, itemIds(items), invoiceNeeded, coupon);
+
+        CompletableFuture<Customer> customer = StripeFutures.supply(
+                () -> customerUtil.findOrCreateCustomer(account, email, name), stripeExecutor);
+
+        if (!invoiceNeeded) {
+            // Priced, including the coupon lookup, while the customer is looked up
+            CompletableFuture<Quote> quote = StripeFutures.supply(() -> quote(account, items, coupon), stripeExecutor);
+            // Both are complete when the combined future runs, so join() does not block
+            return CompletableFuture.allOf(customer, quote)
+                    .thenApplyAsync(StripeFutures.unchecked((Void done) -> createPaymentIntent(account,
+                            customer.join().getId(), quote.join(), key).getClientSecret()), stripeExecutor);
+        }
+
+        // Resolve the Stripe products of the invoice lines and the coupon while the customer is looked up
+        CompletableFuture<String> couponId = StripeFutures.supply(() -> {
+            invoiceService.resolveProducts(account, items);
+            return couponId(account, coupon);
+        }, stripeExecutor);
+
+        return CompletableFuture.allOf(customer, couponId)
+                .thenApplyAsync(StripeFutures.unchecked((Void done) -> createInvoicePayment(account,
+                        customer.join(), items, couponId.join(), key).getClientSecret()), stripeExecutor);
+    }
+
+    /**
+     * @param trialDays length of the free trial, or null for none
+     */
+    public String subscriptionCheckout(StripeAccount account, String email, String name, List<CartItem> items,
+                                       Long trialDays, String idempotencyKey) throws StripeException {
+        String key = idempotency.key(account, idempotencyKey, "checkout-subscription", email, itemIds(items), trialDays);
+
+        // Start by finding existing customer record from Stripe or creating a new one if needed
+        Customer customer = customerUtil.findOrCreateCustomer(account, email, name);
+
+        // For subscriptions, you need to set the mode as subscription
+        return createSession(account, customer.getId(), SessionCreateParams.Mode.SUBSCRIPTION, lineItems(items, true),
+                false, trialDays, key);
+    }
+
+    public CompletableFuture<String> subscriptionCheckoutAsync(StripeAccount account, String email, String name,
+                                                               List<CartItem> items, Long trialDays,
+                                                               String idempotencyKey) {
+        String key = idempotency.key(account, idempotencyKey, "checkout-subscription", email, itemIds(items), trialDays);
+
+        CompletableFuture<Customer> customer = StripeFutures.supply(
+                () -> customerUtil.findOrCreateCustomer(account, email, name), stripeExecutor);
+
+        List<SessionCreateParams.LineItem> lineItems = lineItems(items, true);
+
+        return customer.thenApplyAsync(StripeFutures.unchecked((Customer c) -> createSession(account, c.getId(),
+                SessionCreateParams.Mode.SUBSCRIPTION, lineItems, false, trialDays, key)), stripeExecutor);
+    }
+
+    /**
+     * Builds Checkout line items priced from the catalog; recurring items are billed monthly.
+     */
+    public List<SessionCreateParams.LineItem> lineItems(List<CartItem> items, boolean recurring) {
+        List<SessionCreateParams.LineItem> lineItems = new ArrayList<>(items.size());
+
+        for (CartItem item : items) {
+            lineItems.add(lineItemCache.get(item.getId(), item.getName(), item.getQuantity(), recurring));
+        }
+
+        return lineItems;
+    }
+
+    private String createSession(StripeAccount account, String customerId, SessionCreateParams.Mode mode,
+                                 List<SessionCreateParams.LineItem> lineItems, boolean invoiceNeeded,
+                                 Long trialDays, String idempotencyKey) throws StripeException {
+        // Create a checkout session by adding the details of the checkout
+        SessionCreateParams.Builder paramsBuilder =
+                SessionCreateParams.builder()
+                        .setMode(mode)
+                        .setCustomer(customerId)
+                        .setSuccessUrl(clientBaseUrl + "/success?session_id={CHECKOUT_SESSION_ID}")
+                        .setCancelUrl(clientBaseUrl + "/failure")
+                        .addAllLineItem(lineItems);
+
+        if (invoiceNeeded) {
+            paramsBuilder.setInvoiceCreation(SessionCreateParams.InvoiceCreation.builder().setEnabled(true).build());
+        }
+        if (trialDays != null) {
+            // For trials, you need to set the trial period in the session creation request
+            paramsBuilder.setSubscriptionData(SessionCreateParams.SubscriptionData.builder().setTrialPeriodDays(trialDays).build());
+        }
+
+        // A duplicate submission gets the session of the first one instead of a second session
+        return idempotency.execute(idempotencyKey,
+                () -> Session.create(paramsBuilder.build(), account.options(idempotencyKey)).getUrl());
+    }
+
+    private PaymentIntent createPaymentIntent(StripeAccount account, String customerId, Quote quote,
+                                              String idempotencyKey) throws StripeException {
+        // A PaymentIntent is in one currency, so mixed carts are rejected here
+        int currency = quote.singleCurrency();
+
+        PaymentIntentCreateParams params =
+                PaymentIntentCreateParams.builder()
+                        .setAmount(quote.total(currency))
+                        .setCurrency(quote.currency(currency))
+                        .setCustomer(customerId)
+                        .setAutomaticPaymentMethods(
+                                PaymentIntentCreateParams.AutomaticPaymentMethods
+                                        .builder()
+                                        .setEnabled(true)
+                                        .build()
+                        )
+                        .build();
+
+        return idempotency.execute(idempotencyKey, () -> PaymentIntent.create(params, account.options(idempotencyKey)));
+    }
+
+    /**
+     * The invoice flow spans several Stripe calls and rolls back on failure, so a Stripe-side key
+     * would replay a deleted invoice on retry. Duplicates are therefore only merged locally.
+     */
+    private PaymentIntent createInvoicePayment(StripeAccount account, Customer customer, List<CartItem> items,
+                                               String coupon, String idempotencyKey) throws StripeException {
+        return idempotency.execute(idempotencyKey, () -> invoiceService.createInvoicePayment(account, customer, items, coupon));
+    }
+
+    /**
+     * Prices the cart from the current catalog, with the coupon's discount if one is given.
+     */
+    public Quote quote(StripeAccount account, List<CartItem> items, String coupon) throws StripeException {
+        Coupon valid = validCoupon(account, coupon);
+        return PricingEngine.quote(ProductDAO.catalog(), items, valid != null ? CouponTerms.of(valid) : null);
+    }
+
+    /**
+     * @return the coupon if the id names a valid one, null if no coupon was given
+     */
+    private Coupon validCoupon(StripeAccount account, String coupon) throws StripeException {
+        if (coupon == null || coupon.isBlank()) {
+            return null;
+        }
+        Coupon found = couponCache.find(account, coupon);
+        if (found == null || !Boolean.TRUE.equals(found.getValid())) {
+            throw new InvalidCartException("Coupon " + coupon + " is not valid");
+        }
+        return found;
+    }
+
+    private String couponId(StripeAccount account, String coupon) throws StripeException {
+        Coupon valid = validCoupon(account, coupon);
+        return valid != null ? valid.getId() : null;
+    }
+
+    private static String itemIds(List<CartItem> items) {
+        StringBuilder ids = new StringBuilder();
+        for (CartItem item : items) {
+            ids.append(item.getId()).append('x').append(item.getQuantity()).append(',');
+        }
+        return ids.toString();
+    }
+}
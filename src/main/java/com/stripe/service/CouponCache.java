@@ -0,0 +1,159 @@
+package com.stripe.service;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.account.StripeAccountRegistry;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Coupon;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import com.stripe.param.CouponListParams;
+import com.stripe.utils.TtlCache;
+import com.stripe.webhook.EventObjects;
+import com.stripe.webhook.StripeEventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coupon lookups for the coupon validator. Found coupons are cached for a while, and codes Stripe
+ * does not know are remembered for a shorter time, so repeated validations of the same code cost
+ * at most one Stripe call per TTL.
+ * <p>
+ * For accounts that receive webhooks, all coupon ids are preloaded at startup and kept current
+ * from coupon events. Codes outside that set are rejected without calling Stripe, so random codes
+ * cannot be used to drive up our Stripe traffic.
+ */
+@Service
+public class CouponCache implements StripeEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponCache.class);
+
+    private final StripeAccountRegistry accountRegistry;
+
+    private final boolean preload;
+
+    // "account:coupon id" -> coupon
+    private final TtlCache<String, Coupon> coupons;
+
+    // "account:code" of codes Stripe answered with "no such coupon"
+    private final TtlCache<String, Boolean> unknownCodes;
+
+    // Account id -> every coupon id of the account, only for accounts preloaded and kept current by events
+    private final ConcurrentMap<String, Set<String>> knownIds = new ConcurrentHashMap<>();
+
+    // Account id -> coupon ids being preloaded, so events that arrive during the listing are not lost
+    private final ConcurrentMap<String, Set<String>> loadingIds = new ConcurrentHashMap<>();
+
+    public CouponCache(StripeAccountRegistry accountRegistry,
+                       @Value("${stripe.coupon-cache.ttl-seconds:300}") long ttlSeconds,
+                       @Value("${stripe.coupon-cache.negative-ttl-seconds:60}") long negativeTtlSeconds,
+                       @Value("${stripe.coupon-cache.max-size:10000}") int maxSize,
+                       @Value("${stripe.coupon-cache.preload:true}") boolean preload) {
+        this.accountRegistry = accountRegistry;
+        this.preload = preload;
+        this.coupons = new TtlCache<>(ttlSeconds, TimeUnit.SECONDS, maxSize);
+        this.unknownCodes = new TtlCache<>(negativeTtlSeconds, TimeUnit.SECONDS, maxSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!preload) {
+            return;
+        }
+        for (StripeAccount account : accountRegistry.getAccounts()) {
+            // Coupon events received while listing go into the same set
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            loadingIds.put(account.getId(), ids);
+            try {
+                for (Coupon coupon : Coupon.list(CouponListParams.builder().setLimit(100L).build(), account.options())
+                        .autoPagingIterable()) {
+                    coupons.put(key(account, coupon.getId()), coupon);
+                    ids.add(coupon.getId());
+                }
+                // Without events a coupon created later would be rejected, so only then trust the set
+                if (!account.getWebhookSecret().isEmpty()) {
+                    knownIds.put(account.getId(), ids);
+                }
+                log.info("Loaded {} coupons for {}", ids.size(), account);
+            } catch (StripeException e) {
+                // Not fatal, coupons are then looked up one by one
+                log.warn("Could not preload coupons for {}", account, e);
+            } finally {
+                loadingIds.remove(account.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the coupon with this code, or null if the account has no such coupon
+     */
+    public Coupon find(StripeAccount account, String code) throws StripeException {
+        if (code == null || code.isBlank()) {
+            return null;
+        }
+
+        Set<String> ids = knownIds.get(account.getId());
+        if (ids != null && !ids.contains(code)) {
+            return null;
+        }
+
+        String key = key(account, code);
+        if (unknownCodes.getIfPresent(key) != null) {
+            return null;
+        }
+
+        return coupons.get(key, k -> {
+            try {
+                return Coupon.retrieve(code, account.options());
+            } catch (InvalidRequestException e) {
+                if (!"resource_missing".equals(e.getCode())) {
+                    throw e;
+                }
+                unknownCodes.put(key, Boolean.TRUE);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void handle(StripeAccount account, Event event) {
+        if (!event.getType().startsWith("coupon.")) {
+            return;
+        }
+        StripeObject object = EventObjects.dataObject(event);
+        if (!(object instanceof Coupon coupon)) {
+            return;
+        }
+
+        String key = key(account, coupon.getId());
+        Set<String> ids = knownIds.get(account.getId());
+        if (ids == null) {
+            ids = loadingIds.get(account.getId());
+        }
+        if ("coupon.deleted".equals(event.getType())) {
+            coupons.invalidate(key);
+            if (ids != null) {
+                ids.remove(coupon.getId());
+            }
+        } else {
+            coupons.put(key, coupon);
+            unknownCodes.invalidate(key);
+            if (ids != null) {
+                ids.add(coupon.getId());
+            }
+        }
+    }
+
+    private static String key(StripeAccount account, String code) {
+        return account.getId() + ':' + code;
+    }
+}
@@ -0,0 +1,82 @@
+package com.stripe.service;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.exception.StripeException;
+import com.stripe.utils.StripeFutures;
+import com.stripe.utils.TtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guards creating calls against duplicate submissions. Every call gets an idempotency key, either
+ * the one the client sent or one derived from the request content. Identical calls that are in
+ * flight at the same time are merged locally, results are kept for a short window so that client
+ * retries return instantly, and the key is passed on to Stripe so duplicates reaching other
+ * instances do not create a second object either.
+ */
+@Service
+public class IdempotencyService {
+
+    // Stripe rejects longer idempotency keys
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final TtlCache<String, Object> results;
+
+    // Content hash -> key of the first call with that content within the window
+    private final TtlCache<String, String> derivedKeys;
+
+    public IdempotencyService(@Value("${stripe.idempotency.window-seconds:60}") long windowSeconds,
+                              @Value("${stripe.idempotency.max-size:10000}") int maxSize) {
+        this.results = new TtlCache<>(windowSeconds, TimeUnit.SECONDS, maxSize);
+        this.derivedKeys = new TtlCache<>(windowSeconds, TimeUnit.SECONDS, maxSize);
+    }
+
+    /**
+     * Returns the idempotency key for a call. A client key is scoped to the account and operation,
+     * and hashed if that makes it longer than Stripe allows. Without one, the key comes from a hash
+     * of the request content: calls with the same content within the window after the first one
+     * get the first call's key, the same order placed again after the window gets a new key.
+     */
+    public String key(StripeAccount account, String clientKey, String operation, Object... parts) {
+        if (clientKey != null && !clientKey.isEmpty()) {
+            String key = operation + ':' + account.getId() + ':' + clientKey;
+            return key.length() <= MAX_KEY_LENGTH ? key : operation + ':' + sha256(key);
+        }
+
+        StringBuilder content = new StringBuilder(account.getId());
+        for (Object part : parts) {
+            content.append('\u0000').append(part);
+        }
+        String hash = operation + ':' + sha256(content.toString());
+
+        // Stripe keeps keys for a day, so the window's first call makes the key unique to the window
+        String key = hash + ':' + Long.toString(System.currentTimeMillis(), 36);
+        derivedKeys.putIfAbsent(hash, key);
+        String first = derivedKeys.getIfPresent(hash);
+        return first != null ? first : key;
+    }
+
+    /**
+     * Runs the call once per key and window; concurrent and repeated calls with the same key get
+     * the first call's result. Failures are not remembered, so a retry runs the call again.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, StripeFutures.StripeCall<T> call) throws StripeException {
+        return (T) results.get(key, k -> call.call());
+    }
+
+    static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.stripe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stripe.account.StripeAccount;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.model.Invoice;
+import com.stripe.model.InvoiceCollection;
+import com.stripe.model.InvoiceItem;
+import com.stripe.model.PaymentIntent;
+import com.stripe.param.InvoiceCreateParams;
+import com.stripe.param.InvoiceFinalizeInvoiceParams;
+import com.stripe.param.InvoiceItemCreateParams;
+import com.stripe.param.InvoiceListParams;
+import com.stripe.pricing.CartItem;
+import com.stripe.pricing.InvalidCartException;
+import com.stripe.repository.CatalogItem;
+import com.stripe.repository.ProductDAO;
+import com.stripe.utils.BoundedFanout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.IntStream;
+
+@Service
+public class InvoiceService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceService.class);
+
+    private static final long PAGE_SIZE = 100L;
+
+    private final StripeProductRegistry productRegistry;
+
+    private final ExecutorService stripeExecutor;
+
+    private final ObjectMapper objectMapper;
+
+    // Maximum number of line items created concurrently per invoice, 1 creates them one by one
+    private final int parallelism;
+
+    public InvoiceService(StripeProductRegistry productRegistry,
+                          @Qualifier("stripeExecutor") ExecutorService stripeExecutor,
+                          @Value("${stripe.invoice.parallelism:8}") int parallelism,
+                          ObjectMapper objectMapper) {
+        this.productRegistry = productRegistry;
+        this.stripeExecutor = stripeExecutor;
+        this.parallelism = parallelism;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Creates an invoice for the items, finalizes it and returns the PaymentIntent Stripe creates
+     * for it. Line items are added concurrently; if any of them fails, the ones already created
+     * and the draft invoice are deleted again before the error is rethrown.
+     *
+     * @param coupon id of a coupon to discount the invoice with, or null for none
+     */
+    public PaymentIntent createInvoicePayment(StripeAccount account, Customer customer, List<CartItem> items,
+                                              String coupon) throws StripeException {
+
+        // Resolve prices before touching Stripe, so an unknown product fails without side effects
+        List<CatalogItem> catalogItems = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            if (item.getQuantity() <= 0) {
+                throw new InvalidCartException("Quantity must be positive, was " + item.getQuantity());
+            }
+            catalogItems.add(ProductDAO.getProduct(item.getId()));
+        }
+
+        // Create the invoice object, add line items to it, and finalize it to create the PaymentIntent automatically
+        InvoiceCreateParams.Builder invoiceCreateParams = new InvoiceCreateParams.Builder()
+                .setCustomer(customer.getId());
+        if (coupon != null) {
+            invoiceCreateParams.addDiscount(InvoiceCreateParams.Discount.builder().setCoupon(coupon).build());
+        }
+
+        Invoice invoice = Invoice.create(invoiceCreateParams.build(), account.options());
+
+        Queue<InvoiceItem> created = new ConcurrentLinkedQueue<>();
+        try {
+            BoundedFanout.map(IntStream.range(0, items.size()).boxed().toList(), parallelism, stripeExecutor, i -> {
+                CatalogItem catalogItem = catalogItems.get(i);
+
+                // Resolve the Stripe product for this item, creating it on first use
+                String stripeProductId = productRegistry.resolve(account, catalogItem.getId(), catalogItem.getName());
+
+                // Create an invoice line item using the product object for the line item
+                InvoiceItemCreateParams invoiceItemCreateParams = new InvoiceItemCreateParams.Builder()
+                        .setInvoice(invoice.getId())
+                        .setQuantity(items.get(i).getQuantity())
+                        .setCustomer(customer.getId())
+                        .setPriceData(
+                                InvoiceItemCreateParams.PriceData.builder()
+                                        .setProduct(stripeProductId)
+                                        .setCurrency(catalogItem.getCurrency())
+                                        .setUnitAmount(catalogItem.getUnitAmount())
+                                        .build())
+                        .build();
+
+                InvoiceItem invoiceItem = InvoiceItem.create(invoiceItemCreateParams, account.options());
+                created.add(invoiceItem);
+                return invoiceItem;
+            });
+        } catch (StripeException | RuntimeException e) {
+            rollback(account, invoice, created);
+            throw e;
+        }
+
+        // Mark the invoice as final so that a PaymentIntent is created for it
+        Invoice finalized = invoice.finalizeInvoice(InvoiceFinalizeInvoiceParams.builder().build(), account.options());
+
+        // Retrieve the payment intent object from the invoice
+        return PaymentIntent.retrieve(finalized.getPaymentIntent(), account.options());
+    }
+
+    /**
+     * Makes sure every item has a Stripe product, resolving or creating the missing ones concurrently.
+     */
+    public void resolveProducts(StripeAccount account, List<CartItem> items) throws StripeException {
+        BoundedFanout.map(items, parallelism, stripeExecutor, item -> {
+            CatalogItem catalogItem = ProductDAO.getProduct(item.getId());
+            return productRegistry.resolve(account, catalogItem.getId(), catalogItem.getName());
+        });
+    }
+
+    /**
+     * Writes all invoices of the customer to {@code out} as newline-delimited JSON, one page at a
+     * time as Stripe returns it. Each line carries the invoice id, which can be passed back as
+     * {@code cursor} to resume after that invoice.
+     */
+    public void streamInvoices(StripeAccount account, String customerId, String cursor, OutputStream out) throws IOException, StripeException {
+        String startingAfter = cursor;
+
+        while (true) {
+            InvoiceListParams.Builder params = InvoiceListParams.builder()
+                    .setCustomer(customerId)
+                    .setLimit(PAGE_SIZE);
+            if (startingAfter != null && !startingAfter.isEmpty()) {
+                params.setStartingAfter(startingAfter);
+            }
+
+            InvoiceCollection page = Invoice.list(params.build(), account.options());
+            for (Invoice invoice : page.getData()) {
+                Map<String, String> row = toRow(invoice);
+                row.put("id", invoice.getId());
+                out.write(objectMapper.writeValueAsBytes(row));
+                out.write('\n');
+                startingAfter = invoice.getId();
+            }
+            // Send each page as soon as it is complete
+            out.flush();
+
+            if (!Boolean.TRUE.equals(page.getHasMore()) || page.getData().isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Extracts the invoice number, amount, and PDF URL to send to the client.
+     */
+    public static Map<String, String> toRow(Invoice invoice) {
+        return toRow(invoice.getNumber(), invoice.getTotal(), invoice.getInvoicePdf());
+    }
+
+    public static Map<String, String> toRow(String number, long total, String invoicePdf) {
+        HashMap<String, String> map = new HashMap<>();
+
+        map.put("number", number);
+        map.put("amount", String.valueOf((total / 100f)));
+        map.put("url", invoicePdf);
+
+        return map;
+    }
+
+    private void rollback(StripeAccount account, Invoice invoice, Queue<InvoiceItem> created) {
+        for (InvoiceItem invoiceItem : created) {
+            try {
+                invoiceItem.delete(account.options());
+            } catch (StripeException e) {
+                log.warn("Could not delete invoice item {} of failed invoice {}", invoiceItem.getId(), invoice.getId(), e);
+            }
+        }
+        try {
+            invoice.delete(account.options());
+        } catch (StripeException e) {
+            log.warn("Could not delete draft invoice {}", invoice.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.stripe.service;
+
+import com.stripe.param.checkout.SessionCreateParams;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.ProductData;
+import com.stripe.param.checkout.SessionCreateParams.LineItem.PriceData.Recurring;
+import com.stripe.repository.Catalog;
+import com.stripe.repository.ProductDAO;
+import com.stripe.repository.UnknownProductException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Checkout line items built once per product and billing mode, then shared by every session
+ * that sells the product. Params objects are never modified after they are built, so sharing
+ * them is safe. The cache belongs to one catalog version and starts over when a new version is
+ * swapped in.
+ */
+@Component
+public class LineItemCache {
+
+    private static final Recurring MONTHLY = Recurring.builder().setInterval(Recurring.Interval.MONTH).build();
+
+    private static class Entry {
+        final String name;
+        final SessionCreateParams.LineItem lineItem;
+
+        Entry(String name, SessionCreateParams.LineItem lineItem) {
+            this.name = name;
+            this.lineItem = lineItem;
+        }
+    }
+
+    private static class Compiled {
+        final Catalog catalog;
+        final ConcurrentMap<String, Entry> oneTime = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, Entry> recurring = new ConcurrentHashMap<>();
+
+        Compiled(Catalog catalog) {
+            this.catalog = catalog;
+        }
+    }
+
+    private volatile Compiled compiled = new Compiled(ProductDAO.catalog());
+
+    /**
+     * Returns a line item for the product, priced from the catalog.
+     *
+     * @param name display name sent by the client, or null to use the catalog name
+     */
+    public SessionCreateParams.LineItem get(String productId, String name, long quantity, boolean recurring) {
+        SessionCreateParams.LineItem lineItem = get(productId, name, recurring);
+        if (quantity == 1) {
+            return lineItem;
+        }
+        // Only the quantity differs, the price data is shared
+        return SessionCreateParams.LineItem.builder()
+                .setQuantity(quantity)
+                .setPriceData(lineItem.getPriceData())
+                .build();
+    }
+
+    private SessionCreateParams.LineItem get(String productId, String name, boolean recurring) {
+        Compiled current = compiled;
+        Catalog catalog = ProductDAO.catalog();
+        if (current.catalog != catalog) {
+            current = new Compiled(catalog);
+            compiled = current;
+        }
+
+        ConcurrentMap<String, Entry> items = recurring ? current.recurring : current.oneTime;
+        Entry entry = items.get(productId);
+        if (entry == null) {
+            int index = catalog.indexOf(productId);
+            if (index < 0) {
+                throw new UnknownProductException(productId);
+            }
+            entry = items.computeIfAbsent(productId, id -> new Entry(catalog.name(index),
+                    build(id, catalog.name(index), catalog.currency(index), catalog.unitAmount(index), recurring)));
+        }
+
+        if (name == null || name.equals(entry.name)) {
+            return entry.lineItem;
+        }
+
+        // The client named the product differently, which is rare enough to build it each time
+        int index = catalog.indexOf(productId);
+        return build(productId, name, catalog.currency(index), catalog.unitAmount(index), recurring);
+    }
+
+    private static SessionCreateParams.LineItem build(String productId, String name, String currency, long unitAmount,
+                                                      boolean recurring) {
+        PriceData.Builder priceData = PriceData.builder()
+                .setProductData(
+                        ProductData.builder()
+                                .putMetadata("app_id", productId)
+                                .setName(name)
+                                .build()
+                )
+                .setCurrency(currency)
+                .setUnitAmount(unitAmount);
+        if (recurring) {
+            priceData.setRecurring(MONTHLY);
+        }
+
+        return SessionCreateParams.LineItem.builder()
+                .setQuantity(1L)
+                .setPriceData(priceData.build())
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.stripe.service;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.account.StripeAccountRegistry;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Product;
+import com.stripe.model.ProductSearchResult;
+import com.stripe.param.ProductCreateParams;
+import com.stripe.param.ProductListParams;
+import com.stripe.param.ProductSearchParams;
+import com.stripe.utils.SearchQueries;
+import com.stripe.utils.TtlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps application product ids (the {@code app_id} metadata key) to Stripe product ids, per
+ * Stripe account. Stripe's product metadata stays the source of truth: the map is warmed from
+ * it at startup, extended whenever a product is found or created, and shrunk when one is deleted.
+ */
+@Service
+public class StripeProductRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(StripeProductRegistry.class);
+
+    private final StripeAccountRegistry accountRegistry;
+
+    // "account:app_id" -> Stripe product id
+    private final ConcurrentMap<String, String> productIds = new ConcurrentHashMap<>();
+
+    // Reverse direction, Stripe product id -> app_id. Product ids are unique across accounts.
+    private final ConcurrentMap<String, String> appIds = new ConcurrentHashMap<>();
+
+    // "account:app_id" -> Stripe product id of the last deleted product of the app_id
+    private final ConcurrentMap<String, String> deletedIds = new ConcurrentHashMap<>();
+
+    // Only used to merge concurrent lookups/creates of ids that are not mapped yet
+    private final TtlCache<String, String> pending = new TtlCache<>(1, TimeUnit.MINUTES, 1000);
+
+    public StripeProductRegistry(StripeAccountRegistry accountRegistry) {
+        this.accountRegistry = accountRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        for (StripeAccount account : accountRegistry.getAccounts()) {
+            try {
+                Iterable<Product> products = Product.list(ProductListParams.builder().setLimit(100L).build(), account.options())
+                        .autoPagingIterable();
+                for (Product product : products) {
+                    String appId = product.getMetadata() != null ? product.getMetadata().get("app_id") : null;
+                    if (appId != null) {
+                        remember(account, appId, product.getId());
+                    }
+                }
+                log.info("Loaded Stripe product ids for {}", account);
+            } catch (StripeException e) {
+                // Not fatal, ids are then resolved lazily on first use
+                log.warn("Could not preload Stripe product ids for {}", account, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the Stripe product id for the given application product, creating the product in
+     * Stripe if it does not exist yet.
+     */
+    public String resolve(StripeAccount account, String appId, String name) throws StripeException {
+        String productId = productIds.get(key(account, appId));
+        if (productId != null) {
+            return productId;
+        }
+
+        productId = pending.get(key(account, appId), key -> {
+            // Look for existing Product in Stripe before creating a new one
+            ProductSearchResult results = Product.search(ProductSearchParams.builder()
+                    .setQuery("metadata['app_id']:" + SearchQueries.literal(appId))
+                    .build(), account.options());
+
+            if (!results.getData().isEmpty()) {
+                return results.getData().get(0).getId();
+            }
+
+            // If a product is not found in Stripe database, create it. The idempotency key makes
+            // a concurrent create for the same app_id from another instance return the same product.
+            // It covers all params, as Stripe rejects a key reused with different ones, and the
+            // last deleted product of the app_id, as Stripe would otherwise replay that product.
+            ProductCreateParams productCreateParams = new ProductCreateParams.Builder()
+                    .setName(name)
+                    .putMetadata("app_id", appId)
+                    .build();
+
+            String idempotencyKey = "product-create-" + IdempotencyService.sha256(appId + '\u0000' + name
+                    + '\u0000' + deletedIds.getOrDefault(key, ""));
+            return Product.create(productCreateParams, account.options(idempotencyKey)).getId();
+        });
+
+        remember(account, appId, productId);
+        return productId;
+    }
+
+    /**
+     * @return the app_id of an already known Stripe product, or null if it is not mapped yet
+     */
+    public String appIdOf(String stripeProductId) {
+        return appIds.get(stripeProductId);
+    }
+
+    public void remember(StripeAccount account, String appId, String stripeProductId) {
+        productIds.putIfAbsent(key(account, appId), stripeProductId);
+        appIds.put(stripeProductId, appId);
+    }
+
+    /**
+     * Drops the mapping of a product deleted in Stripe, so the next resolve creates a new one.
+     *
+     * @param appId the app_id metadata of the deleted product, used if the product is not mapped
+     */
+    public void forget(StripeAccount account, String stripeProductId, String appId) {
+        String mappedAppId = appIds.remove(stripeProductId);
+        if (mappedAppId != null) {
+            appId = mappedAppId;
+        }
+        if (appId != null) {
+            productIds.remove(key(account, appId), stripeProductId);
+            deletedIds.put(key(account, appId), stripeProductId);
+        }
+    }
+
+    private static String key(StripeAccount account, String appId) {
+        return account.getId() + ':' + appId;
+    }
+}
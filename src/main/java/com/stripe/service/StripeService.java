@@ -3,12 +3,13 @@ package com.stripe.service;
 import java.util.HashMap;
 import java.util.Map;
 
-import com.stripe.model.checkout.Session;
-import com.stripe.param.checkout.SessionCreateParams;
-import org.springframework.beans.factory.annotation.Value;
+import com.stripe.account.StripeAccount;
+import com.stripe.param.SubscriptionCancelParams;
+import com.stripe.transport.StripeUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import com.stripe.Stripe;
 import com.stripe.model.Charge;
 import com.stripe.model.Coupon;
 import com.stripe.model.Customer;
@@ -18,41 +19,45 @@ import com.stripe.model.Subscription;
 @Service
 public class StripeService {
 
-	@Value("${stripe.key.secret}")
-	private String API_SECET_KEY;
+	private static final Logger log = LoggerFactory.getLogger(StripeService.class);
 
-	public StripeService() {
+	private final IdempotencyService idempotency;
 
+	private final CouponCache couponCache;
+
+	public StripeService(IdempotencyService idempotency, CouponCache couponCache) {
+		this.idempotency = idempotency;
+		this.couponCache = couponCache;
 	}
 
-	public String createCustomer(String email, String token) {
+	public String createCustomer(StripeAccount account, String email, String token) throws StripeUnavailableException {
 
 		String id = null;
 
 		try {
-			Stripe.apiKey = API_SECET_KEY;
 			Map<String, Object> customerParams = new HashMap<>();
 			customerParams.put("description", "Customer for " + email);
 			customerParams.put("email", email);
 			// obtained with stripe.js
 			customerParams.put("source", token);
 
-			Customer customer = Customer.create(customerParams);
+			Customer customer = Customer.create(customerParams, account.options());
 			id = customer.getId();
 
+		} catch (StripeUnavailableException e) {
+			// Rejected by the circuit breaker or bulkhead, reported as such instead of a generic error
+			throw e;
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.warn("Could not create customer for {}", email, e);
 		}
 		return id;
 	}
 
-	public String createSubscription(String customerId, String plan, String coupon) {
+	public String createSubscription(StripeAccount account, String customerId, String plan, String coupon) throws StripeUnavailableException {
 
 		String subscriptionId = null;
 
 		try {
-			Stripe.apiKey = API_SECET_KEY;
-
 			Map<String, Object> item = new HashMap<>();
 			item.put("plan", plan);
 
@@ -67,58 +72,66 @@ public class StripeService {
 				params.put("coupon", coupon);
 			}
 
-			Subscription subscription = Subscription.create(params);
+			Subscription subscription = Subscription.create(params, account.options());
 
 			subscriptionId = subscription.getId();
+		} catch (StripeUnavailableException e) {
+			throw e;
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.warn("Could not create subscription to {} for customer {}", plan, customerId, e);
 		}
 		return subscriptionId;
 	}
 	
-	public boolean cancelSubscription(String subscriptionId) {
+	public boolean cancelSubscription(StripeAccount account, String subscriptionId) throws StripeUnavailableException {
 		
 		boolean subscriptionStatus;
 		
 		try {
-			Subscription subscription = Subscription.retrieve(subscriptionId);
-			subscription.cancel();
+			Subscription subscription = Subscription.retrieve(subscriptionId, account.options());
+			subscription.cancel(SubscriptionCancelParams.builder().build(), account.options());
 			subscriptionStatus = true;	
+		} catch (StripeUnavailableException e) {
+			throw e;
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.warn("Could not cancel subscription {}", subscriptionId, e);
 			subscriptionStatus = false;
 		}
 		return subscriptionStatus;
 	}
 	
-	public Coupon retriveCoupon(String code) {
+	public Coupon retriveCoupon(StripeAccount account, String code) throws StripeUnavailableException {
 		try {
-			Stripe.apiKey = API_SECET_KEY;
-			return Coupon.retrieve(code);
+			// Unknown codes come back as null from the cache instead of throwing
+			return couponCache.find(account, code);
+		} catch (StripeUnavailableException e) {
+			throw e;
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.warn("Could not look up coupon {}", code, e);
 		}
 		return null;
 	}
 	
-	public String createCharge(String email, String token, int amount) {
+	public String createCharge(StripeAccount account, String email, String token, int amount) throws StripeUnavailableException {
 		
 		String chargeId = null;
 		
 		try {
-			Stripe.apiKey = API_SECET_KEY;
-			
 			Map<String, Object> chargeParams = new HashMap<>();
 			chargeParams.put("description","Charge for "+email);
 			chargeParams.put("currency","usd");
 			chargeParams.put("amount",amount);
 			chargeParams.put("source",token);
 			
-			Charge charge = Charge.create(chargeParams);
+			// The token can only be charged once, so a resubmitted form reuses the first charge
+			String key = idempotency.key(account, null, "charge", email, token, amount);
+			Charge charge = idempotency.execute(key, () -> Charge.create(chargeParams, account.options(key)));
 			
 		    chargeId = charge.getId();	
+		} catch (StripeUnavailableException e) {
+			throw e;
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.warn("Could not charge {}", email, e);
 		}
 		return chargeId;
 	}
@@ -0,0 +1,187 @@
+package com.stripe.service;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Product;
+import com.stripe.model.ProductCollection;
+import com.stripe.model.Subscription;
+import com.stripe.model.SubscriptionCollection;
+import com.stripe.model.SubscriptionItem;
+import com.stripe.param.ProductListParams;
+import com.stripe.param.SubscriptionItemListParams;
+import com.stripe.param.SubscriptionListParams;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+@Service
+public class SubscriptionService {
+
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy").withZone(ZoneId.systemDefault());
+
+    // Stripe allows at most 100 objects per list page and 100 ids per product list filter
+    private static final long PAGE_SIZE = 100L;
+
+    private final StripeProductRegistry productRegistry;
+
+    private final ExecutorService stripeExecutor;
+
+    public SubscriptionService(StripeProductRegistry productRegistry,
+                               @Qualifier("stripeExecutor") ExecutorService stripeExecutor) {
+        this.productRegistry = productRegistry;
+        this.stripeExecutor = stripeExecutor;
+    }
+
+    /**
+     * Lists every subscription item of the customer, one row per item. Subscriptions are fetched
+     * with their items and prices expanded, page after page; the next page is requested while the
+     * current one is being processed. Products are resolved from the product registry, and the
+     * ones it does not know yet are fetched with a single list call.
+     */
+    public List<Map<String, String>> listSubscriptionRows(StripeAccount account, String customerId) throws StripeException {
+        SubscriptionListParams.Builder params = SubscriptionListParams.builder()
+                .setCustomer(customerId)
+                .setLimit(PAGE_SIZE)
+                // Product would be a fifth level of expansion, which Stripe rejects
+                .addExpand("data.items.data.price");
+
+        List<Subscription> subscriptions = new ArrayList<>();
+        List<List<SubscriptionItem>> itemsBySubscription = new ArrayList<>();
+
+        SubscriptionCollection page = Subscription.list(params.build(), account.options());
+        while (page != null) {
+            Future<SubscriptionCollection> nextPage = null;
+            List<Subscription> data = page.getData();
+            if (Boolean.TRUE.equals(page.getHasMore()) && !data.isEmpty()) {
+                SubscriptionListParams nextParams = params.setStartingAfter(data.get(data.size() - 1).getId()).build();
+                nextPage = stripeExecutor.submit(() -> Subscription.list(nextParams, account.options()));
+            }
+
+            for (Subscription subscription : data) {
+                subscriptions.add(subscription);
+                itemsBySubscription.add(itemsOf(account, subscription));
+            }
+
+            page = nextPage != null ? await(nextPage) : null;
+        }
+
+        Map<String, String> appIds = resolveAppIds(account, itemsBySubscription);
+
+        long now = System.currentTimeMillis();
+        List<Map<String, String>> response = new ArrayList<>();
+        for (int i = 0; i < subscriptions.size(); i++) {
+            Subscription subscription = subscriptions.get(i);
+            for (SubscriptionItem item : itemsBySubscription.get(i)) {
+                response.add(toRow(subscription, item, appIds.get(item.getPrice().getProduct()), now));
+            }
+        }
+
+        return response;
+    }
+
+    static Map<String, String> toRow(Subscription subscription, SubscriptionItem item, String appProductId, long now) {
+        return toRow(subscription.getId(), subscription.getStartDate(), subscription.getCurrentPeriodEnd(),
+                subscription.getTrialEnd(), item.getPrice().getUnitAmountDecimal().toString(), appProductId, now);
+    }
+
+    /**
+     * Builds the row sent to the client for one subscription item. Dates are epoch seconds.
+     */
+    public static Map<String, String> toRow(String subscriptionId, long startDate, long currentPeriodEnd, Long trialEnd,
+                                            String price, String appProductId, long now) {
+        HashMap<String, String> subscriptionData = new HashMap<>();
+        subscriptionData.put("appProductId", appProductId);
+        subscriptionData.put("subscriptionId", subscriptionId);
+        subscriptionData.put("subscribedOn", DATE_FORMAT.format(Instant.ofEpochSecond(startDate)));
+        subscriptionData.put("nextPaymentDate", DATE_FORMAT.format(Instant.ofEpochSecond(currentPeriodEnd)));
+        subscriptionData.put("price", price);
+
+        if (trialEnd != null && trialEnd * 1000 > now)
+            subscriptionData.put("trialEndsOn", DATE_FORMAT.format(Instant.ofEpochSecond(trialEnd)));
+        return subscriptionData;
+    }
+
+    private List<SubscriptionItem> itemsOf(StripeAccount account, Subscription subscription) throws StripeException {
+        // The embedded item list only holds the first page, fetch the rest for very large subscriptions
+        if (!Boolean.TRUE.equals(subscription.getItems().getHasMore())) {
+            return subscription.getItems().getData();
+        }
+
+        List<SubscriptionItem> items = new ArrayList<>();
+        Iterable<SubscriptionItem> allItems = SubscriptionItem.list(SubscriptionItemListParams.builder()
+                .setSubscription(subscription.getId())
+                .setLimit(PAGE_SIZE)
+                .addExpand("data.price")
+                .build(), account.options()).autoPagingIterable();
+        for (SubscriptionItem item : allItems) {
+            items.add(item);
+        }
+        return items;
+    }
+
+    private Map<String, String> resolveAppIds(StripeAccount account, List<List<SubscriptionItem>> itemsBySubscription) throws StripeException {
+        Map<String, String> appIds = new HashMap<>();
+        Set<String> unknown = new LinkedHashSet<>();
+
+        for (List<SubscriptionItem> items : itemsBySubscription) {
+            for (SubscriptionItem item : items) {
+                String productId = item.getPrice().getProduct();
+                String appId = productRegistry.appIdOf(productId);
+                if (appId != null) {
+                    appIds.put(productId, appId);
+                } else {
+                    unknown.add(productId);
+                }
+            }
+        }
+
+        List<String> ids = new ArrayList<>(unknown);
+        for (int from = 0; from < ids.size(); from += (int) PAGE_SIZE) {
+            ProductListParams productListParams = ProductListParams.builder()
+                    .addAllId(ids.subList(from, Math.min(ids.size(), from + (int) PAGE_SIZE)))
+                    .setLimit(PAGE_SIZE)
+                    .build();
+
+            ProductCollection products = Product.list(productListParams, account.options());
+            for (Product product : products.getData()) {
+                String appId = product.getMetadata() != null ? product.getMetadata().get("app_id") : null;
+                appIds.put(product.getId(), appId);
+                if (appId != null) {
+                    productRegistry.remember(account, appId, product.getId());
+                }
+            }
+        }
+
+        return appIds;
+    }
+
+    private static <T> T await(Future<T> future) throws StripeException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for the next page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StripeException) {
+                throw (StripeException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.stripe.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to how Stripe copes (AIMD): it grows by about one slot per
+ * limit's worth of fast, successful calls and shrinks by a factor when a call is throttled or
+ * slow. A burst of failures from calls started under the same limit shrinks it only once.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    private static final double DECREASE = 0.7;
+
+    private final int min;
+    private final int max;
+    private final long latencyThresholdNanos;
+
+    // A lock rather than synchronized, so waiting virtual threads do not pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private long decreasedAt = System.nanoTime() - 1;
+
+    AdaptiveConcurrencyLimit(int initial, int min, int max, long latencyThresholdNanos) {
+        this.min = min;
+        this.max = max;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = Math.max(min, Math.min(max, initial));
+    }
+
+    /**
+     * Takes a slot, waiting at most maxWaitNanos for one.
+     *
+     * @return the start time to pass to {@link #release}, or -1 if no slot became free
+     */
+    long acquire(long maxWaitNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            inFlight++;
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param overloaded whether Stripe throttled the call or it failed without a response
+     */
+    void release(long startedAt, boolean overloaded) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            inFlight--;
+            if (overloaded || now - startedAt > latencyThresholdNanos) {
+                // Calls started before the last decrease already saw the effect of the old limit
+                if (startedAt - decreasedAt > 0) {
+                    limit = Math.max(min, limit * DECREASE);
+                    decreasedAt = now;
+                }
+            } else if (inFlight + 1 >= (int) limit) {
+                // Only grow while the limit is actually what holds calls back
+                limit = Math.min(max, limit + 1 / limit);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.stripe.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count-based circuit breaker. While closed it keeps the outcomes of the last calls; when too
+ * many of them failed it opens and rejects calls for a while, then lets a few trial calls
+ * through (half-open). If they all succeed it closes again, otherwise it reopens.
+ */
+final class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    // Ordinals are the values of the stripe.circuit.state gauge
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    // Ring of the latest outcomes while closed, true for a failure
+    private final boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    CircuitBreaker(String name, IsolationProperties properties) {
+        this.name = name;
+        this.outcomes = new boolean[properties.getWindowSize()];
+        this.minimumCalls = Math.min(properties.getMinimumCalls(), properties.getWindowSize());
+        this.failureRatePercent = properties.getFailureRatePercent();
+        this.openNanos = TimeUnit.SECONDS.toNanos(properties.getOpenSeconds());
+        this.halfOpenCalls = properties.getHalfOpenCalls();
+    }
+
+    /**
+     * @return whether a call may go ahead; if so, its outcome must be passed to {@link #record}
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                return false;
+            }
+            trialsStarted++;
+        }
+        return true;
+    }
+
+    synchronized void record(boolean failure) {
+        switch (state) {
+            case HALF_OPEN:
+                if (failure) {
+                    open();
+                } else if (++trialsSucceeded >= halfOpenCalls) {
+                    close();
+                }
+                break;
+            case CLOSED:
+                if (recorded == outcomes.length) {
+                    if (outcomes[next]) {
+                        failures--;
+                    }
+                } else {
+                    recorded++;
+                }
+                outcomes[next] = failure;
+                if (failure) {
+                    failures++;
+                }
+                next = (next + 1) % outcomes.length;
+
+                if (recorded >= minimumCalls && failures * 100 >= failureRatePercent * recorded) {
+                    open();
+                }
+                break;
+            default:
+                // A call let through before the circuit opened
+                break;
+        }
+    }
+
+    /**
+     * Gives back a call let through by {@link #tryAcquire} that never reached Stripe, so it says
+     * nothing about Stripe's health and must not use up a trial call either.
+     */
+    synchronized void cancel() {
+        if (state == State.HALF_OPEN && trialsStarted > 0) {
+            trialsStarted--;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    /**
+     * @return seconds until an open circuit lets trial calls through, at least 1
+     */
+    synchronized long retryAfterSeconds() {
+        long remaining = state == State.OPEN ? openNanos - (System.nanoTime() - openedAt) : 0;
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining));
+    }
+
+    private void open() {
+        if (state == State.HALF_OPEN) {
+            log.warn("Circuit for Stripe {} calls reopened after a failed trial call", name);
+        } else {
+            log.warn("Circuit for Stripe {} calls opened after {} of the last {} calls failed", name, failures, recorded);
+        }
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        log.info("Circuit for Stripe {} calls closed", name);
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,203 @@
+package com.stripe.transport;
+
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import com.stripe.net.StripeResponseStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Isolates groups of Stripe operations from each other, so that one degraded Stripe API cannot
+ * tie up the threads the others need. Each group has
+ * <ul>
+ *     <li>a bulkhead: a bounded number of concurrent calls, a call waits at most
+ *     {@code max-wait-ms} for a slot</li>
+ *     <li>a {@link CircuitBreaker} that opens when too many of its recent calls failed (5xx,
+ *     429, no response, or slower than {@code slow-call-ms} not counting time spent in the rate
+ *     limiter). Calls the rate limiter rejects are not recorded.</li>
+ * </ul>
+ * Calls that are not let through fail right away with a {@link StripeUnavailableException}.
+ * Metrics: {@code stripe.circuit.state} (0 closed, 1 half-open, 2 open), {@code stripe.bulkhead.active}
+ * and {@code stripe.isolation.rejected}, all tagged by group.
+ */
+public class IsolatingHttpClient extends HttpClient {
+
+    public static final String PAYMENTS = "payments";
+    public static final String CHECKOUT = "checkout";
+    public static final String SEARCH = "search";
+    public static final String INVOICING = "invoicing";
+    public static final String SUBSCRIPTIONS = "subscriptions";
+    public static final String OTHER = "other";
+
+    private static final int DEFAULT_MAX_CONCURRENT = 8;
+
+    private final class Compartment {
+        final String group;
+        final Semaphore bulkhead;
+        final CircuitBreaker breaker;
+        final Counter bulkheadFull;
+        final Counter circuitOpen;
+
+        Compartment(String group, int maxConcurrent, MeterRegistry registry) {
+            this.group = group;
+            this.bulkhead = new Semaphore(maxConcurrent);
+            this.breaker = new CircuitBreaker(group, properties);
+            this.bulkheadFull = rejected(registry, "bulkhead_full");
+            this.circuitOpen = rejected(registry, "circuit_open");
+
+            Gauge.builder("stripe.circuit.state", breaker, b -> b.state().ordinal())
+                    .description("Circuit breaker state of the operation group: 0 closed, 1 half-open, 2 open")
+                    .tag("group", group)
+                    .register(registry);
+            Gauge.builder("stripe.bulkhead.active", bulkhead, b -> maxConcurrent - b.availablePermits())
+                    .description("Calls of the operation group currently in flight")
+                    .tag("group", group)
+                    .register(registry);
+        }
+
+        private Counter rejected(MeterRegistry registry, String reason) {
+            return Counter.builder("stripe.isolation.rejected")
+                    .description("Calls failed without calling Stripe")
+                    .tag("group", group)
+                    .tag("reason", reason)
+                    .register(registry);
+        }
+
+        /**
+         * Takes a bulkhead slot and passes the circuit breaker, or fails.
+         */
+        void enter() throws StripeUnavailableException {
+            try {
+                if (!bulkhead.tryAcquire(properties.getMaxWaitMs(), TimeUnit.MILLISECONDS)) {
+                    bulkheadFull.increment();
+                    throw new StripeUnavailableException("Too many requests to Stripe for " + group
+                            + " right now. Please try again in a moment.", group, 1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StripeUnavailableException("Interrupted while waiting for a Stripe " + group + " slot", group, 1);
+            }
+            // Checked after the bulkhead, so every call the breaker lets through is also recorded
+            if (!breaker.tryAcquire()) {
+                bulkhead.release();
+                circuitOpen.increment();
+                long retryAfter = breaker.retryAfterSeconds();
+                throw new StripeUnavailableException("Stripe " + group + " is temporarily unavailable. Please try again in "
+                        + retryAfter + " seconds.", group, retryAfter);
+            }
+        }
+
+        void exit(long start, long waitedBefore, boolean failed) {
+            // Waiting for our own rate limiter is not Stripe being slow
+            long waited = RateLimitedHttpClient.waitedNanos() - waitedBefore;
+            boolean slow = System.nanoTime() - start - waited > TimeUnit.MILLISECONDS.toNanos(properties.getSlowCallMs());
+            breaker.record(failed || slow);
+            bulkhead.release();
+        }
+
+        /**
+         * Leaves without recording an outcome, for calls our own rate limiter rejected.
+         */
+        void cancel() {
+            breaker.cancel();
+            bulkhead.release();
+        }
+    }
+
+    private final HttpClient delegate;
+    private final IsolationProperties properties;
+    private final Map<String, Compartment> compartments = new HashMap<>();
+
+    public IsolatingHttpClient(HttpClient delegate, IsolationProperties properties, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.properties = properties;
+        for (String group : new String[]{PAYMENTS, CHECKOUT, SEARCH, INVOICING, SUBSCRIPTIONS, OTHER}) {
+            compartments.put(group, new Compartment(group,
+                    properties.getMaxConcurrent().getOrDefault(group, DEFAULT_MAX_CONCURRENT), registry));
+        }
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        Compartment compartment = compartmentOf(request);
+        compartment.enter();
+        long start = System.nanoTime();
+        long waitedBefore = RateLimitedHttpClient.waitedNanos();
+        try {
+            StripeResponse response = delegate.request(request);
+            compartment.exit(start, waitedBefore, isFailure(response.code()));
+            return response;
+        } catch (RateLimitRejectedException e) {
+            compartment.cancel();
+            throw e;
+        } catch (StripeException | RuntimeException e) {
+            compartment.exit(start, waitedBefore, true);
+            throw e;
+        }
+    }
+
+    @Override
+    public StripeResponseStream requestStream(StripeRequest request) throws StripeException {
+        Compartment compartment = compartmentOf(request);
+        compartment.enter();
+        long start = System.nanoTime();
+        long waitedBefore = RateLimitedHttpClient.waitedNanos();
+        try {
+            // The slot is held until the headers arrive, the body is read by the caller
+            StripeResponseStream response = delegate.requestStream(request);
+            compartment.exit(start, waitedBefore, isFailure(response.code()));
+            return response;
+        } catch (RateLimitRejectedException e) {
+            compartment.cancel();
+            throw e;
+        } catch (StripeException | RuntimeException e) {
+            compartment.exit(start, waitedBefore, true);
+            throw e;
+        }
+    }
+
+    private Compartment compartmentOf(StripeRequest request) {
+        return compartments.get(group(StripeOperations.name(request.method().name(), request.url().getPath())));
+    }
+
+    /**
+     * @return the group of an operation named by {@link StripeOperations}, e.g. {@code search} for
+     * {@code Customer.search}
+     */
+    static String group(String operation) {
+        if (operation.endsWith(".search")) {
+            return SEARCH;
+        }
+        int dot = operation.indexOf('.');
+        switch (dot > 0 ? operation.substring(0, dot) : operation) {
+            case "Charge":
+            case "PaymentIntent":
+            case "PaymentMethod":
+            case "Refund":
+                return PAYMENTS;
+            case "Session":
+                return CHECKOUT;
+            case "Invoice":
+            case "InvoiceItem":
+                return INVOICING;
+            case "Subscription":
+            case "SubscriptionItem":
+                return SUBSCRIPTIONS;
+            default:
+                return OTHER;
+        }
+    }
+
+    // Client errors such as a declined card say nothing about Stripe's health
+    private static boolean isFailure(int status) {
+        return status >= 500 || status == 429;
+    }
+}
@@ -0,0 +1,41 @@
+package com.stripe.transport;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "stripe.isolation")
+public class IsolationProperties {
+
+    private boolean enabled = true;
+
+    // Concurrent calls per operation group (see IsolatingHttpClient), e.g. stripe.isolation.max-concurrent.search=8
+    private Map<String, Integer> maxConcurrent = new LinkedHashMap<>(Map.of(
+            IsolatingHttpClient.PAYMENTS, 24,
+            IsolatingHttpClient.CHECKOUT, 16,
+            IsolatingHttpClient.SEARCH, 8,
+            IsolatingHttpClient.INVOICING, 8,
+            IsolatingHttpClient.SUBSCRIPTIONS, 8,
+            IsolatingHttpClient.OTHER, 8));
+
+    // How long a call may wait for a free slot in its group before it fails
+    private int maxWaitMs = 100;
+
+    // The circuit of a group opens when at least failure-rate-percent of its last window-size calls
+    // failed, once minimum-calls were made. Calls slower than slow-call-ms count as failures.
+    private int windowSize = 20;
+
+    private int minimumCalls = 10;
+
+    private int failureRatePercent = 50;
+
+    private int slowCallMs = 10000;
+
+    // An open circuit fails calls for open-seconds, then lets half-open-calls trial calls through
+    private int openSeconds = 30;
+
+    private int halfOpenCalls = 3;
+}
@@ -0,0 +1,166 @@
+package com.stripe.transport;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.metrics.RequestContext;
+import com.stripe.net.HttpClient;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import com.stripe.net.StripeResponseStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records every request to Stripe, tagged with the SDK operation (see {@link StripeOperations})
+ * and the inbound endpoint it was made for:
+ * <ul>
+ *     <li>{@code stripe.api.calls}: latency histogram</li>
+ *     <li>{@code stripe.api.errors}: failed calls by status and Stripe error type</li>
+ *     <li>{@code stripe.api.in.flight}: calls currently waiting for Stripe</li>
+ * </ul>
+ * Retries by the SDK are recorded as separate calls. Each call is also added to the trace of the
+ * request it was made for, see {@link RequestContext}.
+ */
+public class MeteredHttpClient extends HttpClient {
+
+    private static final String NO_ERROR = "none";
+
+    private final HttpClient delegate;
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public MeteredHttpClient(HttpClient delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        String operation = StripeOperations.name(request.method().name(), request.url().getPath());
+        RequestContext context = RequestContext.current();
+        AtomicInteger active = inFlight(operation, endpoint(context));
+        active.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            StripeResponse response = delegate.request(request);
+            record(context, operation, response.code(), errorType(response.code(), response.body()), start,
+                    response.body() != null ? response.body().length() : 0);
+            return response;
+        } catch (StripeException | RuntimeException e) {
+            record(context, operation, 0, errorType(e), start, 0);
+            throw e;
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    @Override
+    public StripeResponseStream requestStream(StripeRequest request) throws StripeException {
+        String operation = StripeOperations.name(request.method().name(), request.url().getPath());
+        RequestContext context = RequestContext.current();
+        AtomicInteger active = inFlight(operation, endpoint(context));
+        active.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            // Timed until the headers arrive, the body is read by the caller
+            StripeResponseStream response = delegate.requestStream(request);
+            record(context, operation, response.code(), response.code() >= 400 ? "unknown" : NO_ERROR, start, -1);
+            return response;
+        } catch (StripeException | RuntimeException e) {
+            record(context, operation, 0, errorType(e), start, 0);
+            throw e;
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private void record(RequestContext context, String operation, int status, String errorType, long start,
+                        long responseSize) {
+        long duration = System.nanoTime() - start;
+
+        String endpoint = endpoint(context);
+        if (context != null) {
+            context.getTrace().record(operation, status, duration, responseSize);
+        }
+
+        // Status and error type stay off the histogram, each combination would get its own buckets
+        Timer.builder("stripe.api.calls")
+                .description("Requests to the Stripe API")
+                .tag("operation", operation)
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(duration, TimeUnit.NANOSECONDS);
+
+        if (!NO_ERROR.equals(errorType)) {
+            Counter.builder("stripe.api.errors")
+                    .description("Failed requests to the Stripe API by status and Stripe error type")
+                    .tag("operation", operation)
+                    .tag("endpoint", endpoint)
+                    .tag("status", status > 0 ? String.valueOf(status) : "none")
+                    .tag("error_type", errorType)
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    private AtomicInteger inFlight(String operation, String endpoint) {
+        return inFlight.computeIfAbsent(operation + ' ' + endpoint, key -> {
+            AtomicInteger active = new AtomicInteger();
+            Gauge.builder("stripe.api.in.flight", active, AtomicInteger::get)
+                    .description("Requests to the Stripe API waiting for a response")
+                    .tag("operation", operation)
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            return active;
+        });
+    }
+
+    private static String endpoint(RequestContext context) {
+        return context != null ? context.getEndpoint() : RequestContext.NO_ENDPOINT;
+    }
+
+    /**
+     * @return the {@code error.type} of a Stripe error response, e.g. {@code card_error}
+     */
+    static String errorType(int status, String body) {
+        if (status < 400) {
+            return NO_ERROR;
+        }
+        try {
+            JsonElement error = JsonParser.parseString(body).getAsJsonObject().get("error");
+            if (error != null && error.isJsonObject()) {
+                JsonElement type = ((JsonObject) error).get("type");
+                if (type != null && type.isJsonPrimitive()) {
+                    return type.getAsString();
+                }
+            }
+        } catch (RuntimeException e) {
+            // Not a Stripe error body, e.g. from a proxy
+        }
+        return "http_" + status;
+    }
+
+    private static String errorType(Exception e) {
+        if (e instanceof ApiConnectionException) {
+            return "api_connection_error";
+        }
+        if (e instanceof StripeException stripeException && stripeException.getStripeError() != null
+                && stripeException.getStripeError().getType() != null) {
+            return stripeException.getStripeError().getType();
+        }
+        return e.getClass().getSimpleName();
+    }
+}
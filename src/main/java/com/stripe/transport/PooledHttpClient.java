@@ -0,0 +1,198 @@
+package com.stripe.transport;
+
+import com.stripe.Stripe;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpContent;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import com.stripe.net.StripeResponseStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stripe SDK transport on top of the JDK HTTP client. Connections are kept alive and reused,
+ * HTTP/2 is negotiated when the server supports it, and the number of concurrent requests is
+ * capped so that a burst waits briefly for a free slot instead of opening new connections.
+ */
+public class PooledHttpClient extends HttpClient implements MeterBinder {
+
+    // Headers the JDK client sets itself and refuses to take from the caller
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    private final java.net.http.HttpClient client;
+    private final Semaphore permits;
+    private final StripeHttpProperties properties;
+
+    private Counter acquireTimeouts;
+
+    public PooledHttpClient(StripeHttpProperties properties) {
+        this.properties = properties;
+        this.permits = new Semaphore(properties.getMaxConnections(), true);
+
+        // Read by the JDK client when its connection pool is first used
+        System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(properties.getKeepAliveSeconds()));
+
+        this.client = java.net.http.HttpClient.newBuilder()
+                .version(properties.isHttp2() ? java.net.http.HttpClient.Version.HTTP_2 : java.net.http.HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()))
+                .followRedirects(java.net.http.HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        acquire(request);
+        try {
+            HttpResponse<String> response = send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            return new StripeResponse(response.statusCode(), HttpHeaders.of(response.headers().map()), response.body());
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public StripeResponseStream requestStream(StripeRequest request) throws StripeException {
+        acquire(request);
+        boolean streaming = false;
+        try {
+            HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+            // The slot stays taken until the caller has consumed the body
+            InputStream body = new FilterInputStream(response.body()) {
+                private final AtomicBoolean released = new AtomicBoolean();
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    }
+                }
+            };
+            streaming = true;
+            return new StripeResponseStream(response.statusCode(), HttpHeaders.of(response.headers().map()), body);
+        } finally {
+            if (!streaming) {
+                permits.release();
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stripe.http.pool.active", permits, p -> properties.getMaxConnections() - p.availablePermits())
+                .description("Requests to Stripe currently holding a connection slot")
+                .register(registry);
+        Gauge.builder("stripe.http.pool.max", properties, StripeHttpProperties::getMaxConnections)
+                .description("Maximum concurrent requests to Stripe")
+                .register(registry);
+        Gauge.builder("stripe.http.pool.waiting", permits, Semaphore::getQueueLength)
+                .description("Requests waiting for a connection slot")
+                .register(registry);
+        acquireTimeouts = Counter.builder("stripe.http.pool.acquire.timeouts")
+                .description("Requests that gave up waiting for a connection slot")
+                .register(registry);
+    }
+
+    private void acquire(StripeRequest request) throws ApiConnectionException {
+        try {
+            if (!permits.tryAcquire(properties.getAcquireTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                if (acquireTimeouts != null) {
+                    acquireTimeouts.increment();
+                }
+                throw new ApiConnectionException("No free connection to Stripe for " + request.url().getPath()
+                        + " within " + properties.getAcquireTimeoutMs() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for a connection to Stripe", e);
+        }
+    }
+
+    private <T> HttpResponse<T> send(StripeRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws StripeException {
+        try {
+            return client.send(toHttpRequest(request), bodyHandler);
+        } catch (IOException e) {
+            throw new ApiConnectionException(String.format(
+                    "IOException during API request to Stripe (%s): %s", Stripe.getApiBase(), e.getMessage()), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted during API request to Stripe", e);
+        }
+    }
+
+    private HttpRequest toHttpRequest(StripeRequest request) throws ApiConnectionException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(request.url().toURI());
+        } catch (URISyntaxException e) {
+            throw new ApiConnectionException("Invalid Stripe request URL " + request.url(), e);
+        }
+        builder.timeout(Duration.ofMillis(readTimeout(request)));
+
+        for (Map.Entry<String, List<String>> header : request.headers().map().entrySet()) {
+            if (RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        if (!request.headers().firstValue("User-Agent").isPresent()) {
+            builder.header("User-Agent", "Stripe/v1 JavaBindings/" + Stripe.VERSION);
+        }
+
+        HttpContent content = request.content();
+        if (content != null) {
+            builder.header("Content-Type", content.contentType());
+            builder.method(request.method().name(), HttpRequest.BodyPublishers.ofByteArray(content.byteArrayContent()));
+        } else {
+            builder.method(request.method().name(), HttpRequest.BodyPublishers.noBody());
+        }
+
+        return builder.build();
+    }
+
+    private int readTimeout(StripeRequest request) {
+        String path = request.url().getPath();
+        String bestPrefix = null;
+        for (String prefix : properties.getReadTimeoutsMs().keySet()) {
+            if (path.startsWith(prefix) && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+                bestPrefix = prefix;
+            }
+        }
+        if (bestPrefix != null) {
+            return properties.getReadTimeoutsMs().get(bestPrefix);
+        }
+
+        // A per-call timeout in RequestOptions wins over the configured default
+        int requested = request.options().getReadTimeout();
+        return requested != Stripe.getReadTimeout() ? requested : properties.getReadTimeoutMs();
+    }
+}
@@ -0,0 +1,37 @@
+package com.stripe.transport;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "stripe.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Sustained requests per second for all calls of one account; Stripe allows 100 in live mode and 25 in test mode
+    private double requestsPerSecond = 100;
+
+    // Search calls also count against this, stricter, limit
+    private double searchRequestsPerSecond = 20;
+
+    // How long a call may wait for a token or a concurrency slot before it fails
+    private int maxWaitMs = 5000;
+
+    // Concurrent calls start at the initial limit, which then adapts between min and max
+    private int initialConcurrency = 16;
+
+    private int minConcurrency = 2;
+
+    private int maxConcurrency = 64;
+
+    // Calls slower than this, like 429s, make the concurrency limit shrink
+    private int latencyThresholdMs = 2000;
+
+    // Retries of a call that Stripe answered with 429, with jittered exponential backoff
+    private int maxRetries = 3;
+
+    private int retryBaseMs = 250;
+
+    private int retryMaxMs = 5000;
+}
@@ -0,0 +1,14 @@
+package com.stripe.transport;
+
+import com.stripe.exception.ApiConnectionException;
+
+/**
+ * Thrown without calling Stripe when a call gets no rate limit token or concurrency slot in time.
+ * This is our own limit, not a sign that Stripe is unhealthy.
+ */
+public class RateLimitRejectedException extends ApiConnectionException {
+
+    public RateLimitRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,290 @@
+package com.stripe.transport;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.RequestOptions;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import com.stripe.net.StripeResponseStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps outbound calls just under Stripe's rate limits instead of running into them. Stripe
+ * limits each account separately, so each API key, or connected account for calls made on its
+ * behalf, has its own limits:
+ * <ul>
+ *     <li>every call takes a token from a bucket refilled at {@code requests-per-second}, and
+ *     search calls also from the stricter search bucket</li>
+ *     <li>the number of concurrent calls is capped by an {@link AdaptiveConcurrencyLimit} that
+ *     shrinks on 429s, failed calls and slow calls and grows back while calls succeed</li>
+ *     <li>a 429 is retried after a jittered exponential backoff, or after Retry-After when
+ *     Stripe sends it. Stripe rejects such a call before processing it, so a retry is safe.</li>
+ * </ul>
+ * Calls that cannot get a token or a slot within {@code max-wait-ms} fail with a
+ * {@link RateLimitRejectedException}. Each retry is a separate call for the delegate, so metrics and
+ * traces below this client see every attempt.
+ */
+public class RateLimitedHttpClient extends HttpClient {
+
+    private static final String SEARCH = "search";
+    private static final String DEFAULT = "default";
+
+    // Time the current thread spent waiting for tokens, slots and backoffs, see waitedNanos()
+    private static final ThreadLocal<long[]> WAITED = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static final class Family {
+        final boolean search;
+        final Counter throttled;
+        final Counter retries;
+        final Counter rejected;
+        final Timer wait;
+
+        Family(String name, boolean search, MeterRegistry registry) {
+            this.search = search;
+            this.throttled = Counter.builder("stripe.ratelimit.throttled")
+                    .description("Calls Stripe answered with 429 Too Many Requests")
+                    .tag("family", name)
+                    .register(registry);
+            this.retries = Counter.builder("stripe.ratelimit.retries")
+                    .description("Calls retried after a 429")
+                    .tag("family", name)
+                    .register(registry);
+            this.rejected = Counter.builder("stripe.ratelimit.rejected")
+                    .description("Calls that failed waiting for a rate limit token or a concurrency slot")
+                    .tag("family", name)
+                    .register(registry);
+            this.wait = Timer.builder("stripe.ratelimit.wait")
+                    .description("Time calls waited for a rate limit token and a concurrency slot")
+                    .tag("family", name)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * The limits of one Stripe account.
+     */
+    private final class Limits {
+        final TokenBucket all;
+        final TokenBucket searches;
+        final AdaptiveConcurrencyLimit concurrency;
+
+        Limits(String account) {
+            // Bursts of up to one second's worth of calls
+            this.all = new TokenBucket(properties.getRequestsPerSecond(), properties.getRequestsPerSecond());
+            this.searches = new TokenBucket(properties.getSearchRequestsPerSecond(), properties.getSearchRequestsPerSecond());
+            this.concurrency = new AdaptiveConcurrencyLimit(properties.getInitialConcurrency(), properties.getMinConcurrency(),
+                    properties.getMaxConcurrency(), TimeUnit.MILLISECONDS.toNanos(properties.getLatencyThresholdMs()));
+
+            Gauge.builder("stripe.ratelimit.concurrency.limit", concurrency, AdaptiveConcurrencyLimit::limit)
+                    .description("Current adaptive limit of concurrent calls to Stripe")
+                    .tag("account", account)
+                    .register(registry);
+            Gauge.builder("stripe.ratelimit.concurrency.in.flight", concurrency, AdaptiveConcurrencyLimit::inFlight)
+                    .description("Calls to Stripe currently holding a concurrency slot")
+                    .tag("account", account)
+                    .register(registry);
+        }
+    }
+
+    private final HttpClient delegate;
+    private final RateLimitProperties properties;
+    private final MeterRegistry registry;
+    private final Family search;
+    private final Family other;
+
+    // API key or connected account id -> its limits
+    private final ConcurrentMap<String, Limits> limits = new ConcurrentHashMap<>();
+
+    public RateLimitedHttpClient(HttpClient delegate, RateLimitProperties properties, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.registry = registry;
+        this.search = new Family(SEARCH, true, registry);
+        this.other = new Family(DEFAULT, false, registry);
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        Family family = familyOf(request);
+        Limits account = limitsOf(request);
+        for (int attempt = 0; ; attempt++) {
+            long startedAt = acquire(family, account, request);
+            StripeResponse response;
+            try {
+                response = delegate.request(request);
+            } catch (StripeException | RuntimeException e) {
+                account.concurrency.release(startedAt, true);
+                throw e;
+            }
+            account.concurrency.release(startedAt, response.code() == 429);
+
+            if (!retry(family, attempt, response.code(), response.headers())) {
+                return response;
+            }
+        }
+    }
+
+    @Override
+    public StripeResponseStream requestStream(StripeRequest request) throws StripeException {
+        Family family = familyOf(request);
+        Limits account = limitsOf(request);
+        for (int attempt = 0; ; attempt++) {
+            long startedAt = acquire(family, account, request);
+            StripeResponseStream response;
+            try {
+                // The slot is released once the headers arrive, the body is read by the caller
+                response = delegate.requestStream(request);
+            } catch (StripeException | RuntimeException e) {
+                account.concurrency.release(startedAt, true);
+                throw e;
+            }
+            account.concurrency.release(startedAt, response.code() == 429);
+
+            if (!retry(family, attempt, response.code(), response.headers())) {
+                return response;
+            }
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                // Nothing was read from the throttled response
+            }
+        }
+    }
+
+    private Family familyOf(StripeRequest request) {
+        return request.url().getPath().endsWith("/search") ? search : other;
+    }
+
+    private Limits limitsOf(StripeRequest request) {
+        RequestOptions options = request.options();
+        String account = options.getStripeAccount() != null ? options.getStripeAccount() : options.getApiKey();
+        return limits.computeIfAbsent(account != null ? account : "", key -> new Limits(label(key)));
+    }
+
+    /**
+     * @return a name of the account for metrics that does not give away its API key
+     */
+    private static String label(String account) {
+        if (account.isEmpty()) {
+            return DEFAULT;
+        }
+        if (account.startsWith("acct_")) {
+            return account;
+        }
+        // Like the dashboard shows keys, e.g. sk_live_...4242
+        int prefix = account.lastIndexOf('_') + 1;
+        return account.substring(0, prefix) + "..." + account.substring(Math.max(prefix, account.length() - 4));
+    }
+
+    /**
+     * Waits for a token from each bucket the call needs and then for a concurrency slot.
+     *
+     * @return the start time of the call, for {@link AdaptiveConcurrencyLimit#release}
+     */
+    private long acquire(Family family, Limits account, StripeRequest request) throws StripeException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(properties.getMaxWaitMs());
+        TokenBucket[] buckets = family.search
+                ? new TokenBucket[]{account.searches, account.all}
+                : new TokenBucket[]{account.all};
+        int reservedBuckets = 0;
+        try {
+            long wait = 0;
+            for (TokenBucket bucket : buckets) {
+                long reserved = bucket.reserve(deadline - start);
+                if (reserved < 0) {
+                    throw rejected(family, request, "rate limit");
+                }
+                reservedBuckets++;
+                wait = Math.max(wait, reserved);
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            long startedAt = account.concurrency.acquire(deadline - System.nanoTime());
+            if (startedAt < 0) {
+                throw rejected(family, request, "concurrency limit");
+            }
+            reservedBuckets = 0;
+            return startedAt;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for the Stripe rate limit", e);
+        } finally {
+            // The call is not made, so the tokens it took are free for others
+            for (int i = 0; i < reservedBuckets; i++) {
+                buckets[i].cancel();
+            }
+            long waited = System.nanoTime() - start;
+            WAITED.get()[0] += waited;
+            family.wait.record(waited, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private RateLimitRejectedException rejected(Family family, StripeRequest request, String limit) {
+        family.rejected.increment();
+        return new RateLimitRejectedException("Stripe " + limit + " for " + request.url().getPath()
+                + " not available within " + properties.getMaxWaitMs() + " ms");
+    }
+
+    /**
+     * Decides whether to retry a response and, if so, sleeps for the backoff first.
+     */
+    private boolean retry(Family family, int attempt, int status, HttpHeaders headers) throws ApiConnectionException {
+        if (status != 429) {
+            return false;
+        }
+        family.throttled.increment();
+        if (attempt >= properties.getMaxRetries()
+                || "false".equals(headers.firstValue("Stripe-Should-Retry").orElse(null))) {
+            return false;
+        }
+        family.retries.increment();
+
+        long backoff = backoffMs(attempt, headers);
+        try {
+            Thread.sleep(backoff);
+            WAITED.get()[0] += TimeUnit.MILLISECONDS.toNanos(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while backing off from a Stripe rate limit", e);
+        }
+        return true;
+    }
+
+    /**
+     * @return the total time the current thread has waited in this client so far. Clients above it
+     * take the difference across a call to leave the waiting out of the call's duration.
+     */
+    static long waitedNanos() {
+        return WAITED.get()[0];
+    }
+
+    private long backoffMs(int attempt, HttpHeaders headers) {
+        // Half of the exponential delay is fixed, the other half random, so throttled callers spread out
+        long cap = Math.min(properties.getRetryMaxMs(), (long) properties.getRetryBaseMs() << Math.min(attempt, 20));
+        long backoff = cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+
+        String retryAfter = headers.firstValue("Retry-After").orElse(null);
+        if (retryAfter != null) {
+            try {
+                backoff = Math.max(backoff, Math.min(properties.getRetryMaxMs(), Long.parseLong(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException e) {
+                // An HTTP date, which Stripe does not send; the computed backoff applies
+            }
+        }
+        return backoff;
+    }
+}
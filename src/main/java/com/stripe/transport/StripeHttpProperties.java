@@ -0,0 +1,36 @@
+package com.stripe.transport;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "stripe.http")
+public class StripeHttpProperties {
+
+    // Base URL of the Stripe API, e.g. a local stand-in for load tests; empty keeps api.stripe.com
+    private String apiBase = "";
+
+    // Use the pooled transport instead of the SDK's HttpURLConnection client
+    private boolean pooled = true;
+
+    // Maximum concurrent requests to Stripe; with HTTP/2 they share multiplexed connections
+    private int maxConnections = 64;
+
+    // How long a request may wait for a free connection before it fails
+    private int acquireTimeoutMs = 2000;
+
+    private int connectTimeoutMs = 5000;
+
+    // Used when neither the call's RequestOptions nor readTimeoutsMs set a read timeout
+    private int readTimeoutMs = 30000;
+
+    // Read timeouts by request path prefix, e.g. stripe.http.read-timeouts-ms.[/v1/customers/search]=5000
+    private Map<String, Integer> readTimeoutsMs = new LinkedHashMap<>();
+
+    private int keepAliveSeconds = 120;
+
+    private boolean http2 = true;
+}
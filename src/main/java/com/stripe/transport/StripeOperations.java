@@ -0,0 +1,94 @@
+package com.stripe.transport;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Names Stripe API requests the way the SDK methods are called, e.g. {@code POST /v1/customers}
+ * is {@code Customer.create} and {@code GET /v1/customers/search} is {@code Customer.search}.
+ * Object ids are dropped, so the number of distinct names stays small.
+ */
+public final class StripeOperations {
+
+    // Resources whose SDK class name is not simply the singular of the path segment
+    private static final Map<String, String> RESOURCES = Map.ofEntries(
+            Map.entry("checkout/sessions", "Session"),
+            Map.entry("billing_portal/sessions", "BillingPortalSession"),
+            Map.entry("invoiceitems", "InvoiceItem"),
+            Map.entry("payment_intents", "PaymentIntent"),
+            Map.entry("payment_methods", "PaymentMethod"),
+            Map.entry("setup_intents", "SetupIntent"),
+            Map.entry("subscription_items", "SubscriptionItem"),
+            Map.entry("promotion_codes", "PromotionCode"),
+            Map.entry("balance_transactions", "BalanceTransaction"));
+
+    // Path segments that group resources, e.g. /v1/checkout/sessions
+    private static final Set<String> NAMESPACES = Set.of("checkout", "billing_portal", "billing", "radar", "terminal",
+            "test_helpers", "treasury", "issuing", "identity", "reporting", "sigma", "financial_connections", "tax");
+
+    private StripeOperations() {
+    }
+
+    public static String name(String method, String path) {
+        String[] segments = path.split("/");
+        // segments[0] is empty and segments[1] is the API version
+        int i = 2;
+        if (segments.length <= i) {
+            return "unknown";
+        }
+
+        String resource = segments[i++];
+        if (NAMESPACES.contains(resource) && segments.length > i) {
+            resource = resource + '/' + segments[i++];
+        }
+        String type = RESOURCES.getOrDefault(resource, className(resource));
+
+        if (segments.length == i) {
+            return type + ("GET".equals(method) ? ".list" : "POST".equals(method) ? ".create" : '.' + method.toLowerCase(Locale.ROOT));
+        }
+        if ("search".equals(segments[i])) {
+            return type + ".search";
+        }
+
+        // segments[i] is an object id
+        i++;
+        if (segments.length == i) {
+            switch (method) {
+                case "GET":
+                    return type + ".retrieve";
+                case "POST":
+                    return type + ".update";
+                case "DELETE":
+                    return type + ".delete";
+                default:
+                    return type + '.' + method.toLowerCase(Locale.ROOT);
+            }
+        }
+
+        // An action such as /v1/invoices/{id}/finalize, or a nested collection
+        return type + '.' + camelCase(segments[i]);
+    }
+
+    private static String className(String segment) {
+        String name = segment.endsWith("ies") ? segment.substring(0, segment.length() - 3) + 'y'
+                : segment.endsWith("s") ? segment.substring(0, segment.length() - 1) : segment;
+        String camel = camelCase(name);
+        return Character.toUpperCase(camel.charAt(0)) + camel.substring(1);
+    }
+
+    private static String camelCase(String segment) {
+        StringBuilder name = new StringBuilder(segment.length());
+        boolean upper = false;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '_' || c == '/') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package com.stripe.transport;
+
+import com.stripe.exception.ApiConnectionException;
+
+/**
+ * Thrown without calling Stripe when the circuit of the call's operation group is open or the
+ * group has no free slot. Callers that already handle connection failures handle this too.
+ */
+public class StripeUnavailableException extends ApiConnectionException {
+
+    private final String group;
+    private final long retryAfterSeconds;
+
+    public StripeUnavailableException(String message, String group, long retryAfterSeconds) {
+        super(message);
+        this.group = group;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * @return when the caller may try again, for the Retry-After header
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,47 @@
+package com.stripe.transport;
+
+/**
+ * Token bucket that hands out reservations: a caller takes a token right away, possibly going
+ * into debt, and is told how long to wait before using it. Callers are thereby served in the
+ * order they arrive without holding a lock while they wait.
+ */
+final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+
+    TokenBucket(double perSecond, double burst) {
+        this.tokensPerNano = perSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    /**
+     * Reserves one token.
+     *
+     * @return nanoseconds to wait before the token may be used, or -1 if that would be longer
+     * than maxWaitNanos, in which case nothing was reserved
+     */
+    synchronized long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+
+        long wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Gives back a token reserved for a call that was not made after all.
+     */
+    synchronized void cancel() {
+        tokens = Math.min(burst, tokens + 1);
+    }
+}
@@ -0,0 +1,116 @@
+package com.stripe.utils;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a blocking task for every input with at most {@code parallelism} tasks in flight.
+ * The calling thread works through the inputs as well, so a parallelism of 1 is plain
+ * sequential execution, and the call never waits for helpers that have not started, so it is
+ * safe to use from a thread of the executor itself.
+ */
+public final class BoundedFanout {
+
+    public interface Task<T, R> {
+        R apply(T input) throws StripeException;
+    }
+
+    private BoundedFanout() {
+    }
+
+    /**
+     * Applies the task to every input and returns the results in input order. After the first
+     * failure no new tasks are started; the call returns only once all started tasks have
+     * finished and then rethrows that first failure.
+     */
+    public static <T, R> List<R> map(List<T> inputs, int parallelism, Executor executor, Task<T, R> task)
+            throws StripeException {
+        int size = inputs.size();
+        Object[] results = new Object[size];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            int i;
+            while (failure.get() == null && (i = next.getAndIncrement()) < size) {
+                try {
+                    results[i] = task.apply(inputs.get(i));
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        };
+
+        int helpers = Math.max(Math.min(Math.max(parallelism, 1), size) - 1, 0);
+        CountDownLatch done = new CountDownLatch(helpers);
+        // Each helper slot is claimed once, either by a pool thread that runs it or by the caller
+        AtomicInteger unclaimed = new AtomicInteger(helpers);
+        for (int h = 0; h < helpers; h++) {
+            try {
+                executor.execute(() -> {
+                    if (unclaimed.getAndDecrement() <= 0) {
+                        return;
+                    }
+                    try {
+                        worker.run();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // E.g. rejected during shutdown. Started helpers stop after their current task,
+                // the slots of the others are taken back below.
+                failure.compareAndSet(null, e);
+                break;
+            }
+        }
+        worker.run();
+
+        // The caller may itself be a thread of the executor. Helpers still queued behind it are
+        // taken back instead of awaited, as there is no work left for them anyway.
+        while (unclaimed.getAndDecrement() > 0) {
+            done.countDown();
+        }
+
+        // Started helpers are always awaited, so the caller never cleans up while they still run
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof StripeException) {
+            throw (StripeException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new ApiConnectionException("Interrupted while waiting for concurrent Stripe calls", t);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) new ArrayList<>(Arrays.asList(results));
+        return list;
+    }
+}
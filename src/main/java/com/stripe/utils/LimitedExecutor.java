@@ -0,0 +1,93 @@
+package com.stripe.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on a shared executor with at most {@code limit} of them running at once; the rest
+ * wait here rather than in the shared executor's queue, so one large job cannot take over the
+ * shared threads. Tasks submitted with {@link #executeFirst} go ahead of the waiting ones.
+ */
+public final class LimitedExecutor implements Executor {
+
+    private final Executor delegate;
+    private final int limit;
+
+    private final Deque<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+    private boolean shutdown;
+
+    public LimitedExecutor(Executor delegate, int limit) {
+        this.delegate = delegate;
+        this.limit = Math.max(1, limit);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submit(task, false);
+    }
+
+    public void executeFirst(Runnable task) {
+        submit(task, true);
+    }
+
+    /**
+     * @return a view of this executor that submits with {@link #executeFirst}
+     */
+    public Executor first() {
+        return this::executeFirst;
+    }
+
+    /**
+     * Drops the waiting tasks and ignores new ones. Running tasks are not interrupted.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        waiting.clear();
+    }
+
+    private void submit(Runnable task, boolean first) {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            if (running >= limit) {
+                if (first) {
+                    waiting.addFirst(task);
+                } else {
+                    waiting.addLast(task);
+                }
+                return;
+            }
+            running++;
+        }
+        try {
+            delegate.execute(() -> run(task));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                running--;
+            }
+            throw e;
+        }
+    }
+
+    private void run(Runnable task) {
+        Runnable next = task;
+        while (next != null) {
+            try {
+                next.run();
+            } catch (RuntimeException e) {
+                // A failing task must not stall the ones waiting behind it
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+            synchronized (this) {
+                next = waiting.pollFirst();
+                if (next == null) {
+                    running--;
+                }
+            }
+        }
+    }
+}
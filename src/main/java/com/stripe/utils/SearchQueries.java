@@ -0,0 +1,18 @@
+package com.stripe.utils;
+
+/**
+ * Helpers for the query language of Stripe's search endpoints.
+ */
+public final class SearchQueries {
+
+    private SearchQueries() {
+    }
+
+    /**
+     * @return the value as a quoted string literal, with quotes and backslashes escaped so the
+     * value cannot end the literal and change the query
+     */
+    public static String literal(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
@@ -0,0 +1,47 @@
+package com.stripe.utils;
+
+import com.stripe.exception.StripeException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Adapters between blocking Stripe calls, which throw checked {@link StripeException}s, and
+ * {@link CompletableFuture} pipelines. Failures travel as {@link CompletionException}s, which
+ * Spring MVC unwraps before resolving the error response.
+ */
+public final class StripeFutures {
+
+    public interface StripeCall<T> {
+        T call() throws StripeException;
+    }
+
+    public interface StripeFunction<T, R> {
+        R apply(T input) throws StripeException;
+    }
+
+    private StripeFutures() {
+    }
+
+    public static <T> CompletableFuture<T> supply(StripeCall<T> call, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (StripeException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    public static <T, R> Function<T, R> unchecked(StripeFunction<T, R> function) {
+        return input -> {
+            try {
+                return function.apply(input);
+            } catch (StripeException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package com.stripe.utils;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Small bounded cache with a time-to-live per entry and least-recently-used eviction.
+ * Concurrent loads of the same key are merged so that only one caller hits Stripe.
+ */
+public class TtlCache<K, V> {
+
+    public interface Loader<K, V> {
+        V load(K key) throws StripeException;
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final Map<K, Entry<V>> entries;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TtlCache(long ttl, TimeUnit unit, int maxSize) {
+        this.ttlNanos = unit.toNanos(ttl);
+        // Access-ordered map, so the eldest entry is always the least recently used one
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public V getIfPresent(K key) {
+        V value = lookup(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value, or loads it. If another thread is already loading the same key,
+     * waits for that result instead of starting a second load. Null results are not cached.
+     */
+    public V get(K key, Loader<K, V> loader) throws StripeException {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        return load(key, loader);
+    }
+
+    /**
+     * Like {@link #get}, but without counting a hit or miss, for callers that have already
+     * looked the key up and missed.
+     */
+    public V load(K key, Loader<K, V> loader) throws StripeException {
+        V value = lookup(key);
+        if (value != null) {
+            return value;
+        }
+
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            // Another loader may have finished between the lookup above and registering ours
+            value = lookup(key);
+            if (value == null) {
+                value = loader.load(key);
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            pending.complete(value);
+            return value;
+        } catch (StripeException | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Stores the value unless the key already has a live entry.
+     *
+     * @return true if the value was stored
+     */
+    public synchronized boolean putIfAbsent(K key, V value) {
+        if (lookup(key) != null) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    private synchronized V lookup(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() <= 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static <V> V await(CompletableFuture<V> future) throws StripeException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for a concurrent Stripe call", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof StripeException) {
+                throw (StripeException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
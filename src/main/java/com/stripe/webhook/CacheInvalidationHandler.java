@@ -0,0 +1,66 @@
+package com.stripe.webhook;
+
+import com.stripe.CustomerUtil;
+import com.stripe.account.StripeAccount;
+import com.stripe.model.Customer;
+import com.stripe.model.Event;
+import com.stripe.model.Product;
+import com.stripe.model.StripeObject;
+import com.stripe.service.StripeProductRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Keeps the customer cache and the product id mapping in line with changes made in Stripe.
+ */
+@Component
+public class CacheInvalidationHandler implements StripeEventHandler {
+
+    private final CustomerUtil customerUtil;
+
+    private final StripeProductRegistry productRegistry;
+
+    public CacheInvalidationHandler(CustomerUtil customerUtil, StripeProductRegistry productRegistry) {
+        this.customerUtil = customerUtil;
+        this.productRegistry = productRegistry;
+    }
+
+    @Override
+    public void handle(StripeAccount account, Event event) {
+        StripeObject object = EventObjects.dataObject(event);
+
+        switch (event.getType()) {
+            case "customer.updated":
+            case "customer.deleted":
+                // The email may have changed, drop the entry so the next lookup searches again
+                if (object instanceof Customer && ((Customer) object).getEmail() != null) {
+                    customerUtil.evict(account, ((Customer) object).getEmail());
+                }
+                // The old email must not keep resolving to this customer either
+                Map<String, Object> previous = event.getData().getPreviousAttributes();
+                if (previous != null && previous.get("email") instanceof String previousEmail) {
+                    customerUtil.evict(account, previousEmail);
+                }
+                break;
+            case "product.created":
+            case "product.updated":
+                if (object instanceof Product && ((Product) object).getMetadata() != null) {
+                    String appId = ((Product) object).getMetadata().get("app_id");
+                    if (appId != null) {
+                        productRegistry.remember(account, appId, ((Product) object).getId());
+                    }
+                }
+                break;
+            case "product.deleted":
+                if (object instanceof Product) {
+                    Product product = (Product) object;
+                    productRegistry.forget(account, product.getId(),
+                            product.getMetadata() != null ? product.getMetadata().get("app_id") : null);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
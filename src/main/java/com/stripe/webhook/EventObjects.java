@@ -0,0 +1,33 @@
+package com.stripe.webhook;
+
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the object of webhook events for the {@link StripeEventHandler}s.
+ */
+public final class EventObjects {
+
+    private static final Logger log = LoggerFactory.getLogger(EventObjects.class);
+
+    private EventObjects() {
+    }
+
+    /**
+     * @return the object the event is about, or null if it cannot be read
+     */
+    public static StripeObject dataObject(Event event) {
+        return event.getDataObjectDeserializer().getObject().orElseGet(() -> {
+            // The event was sent with another API version than the library's, try reading it anyway
+            try {
+                return event.getDataObjectDeserializer().deserializeUnsafe();
+            } catch (EventDataObjectDeserializationException e) {
+                log.warn("Could not read the object of event {} ({})", event.getId(), event.getType(), e);
+                return null;
+            }
+        });
+    }
+}
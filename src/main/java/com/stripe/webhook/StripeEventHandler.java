@@ -0,0 +1,40 @@
+package com.stripe.webhook;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.model.Event;
+
+import java.util.List;
+
+/**
+ * Receives verified, de-duplicated Stripe events. Events about the same object are delivered
+ * one at a time and in the order they were received; events about different objects may be
+ * delivered concurrently.
+ */
+public interface StripeEventHandler {
+
+    void handle(StripeAccount account, Event event);
+
+    /**
+     * Receives a batch of events of one account, in the order they were received. Handlers that
+     * can apply several events at once, e.g. under one lock, override this. By default each event
+     * is handled on its own, and a failing event does not keep the others from being handled: its
+     * exception is thrown once all events were tried.
+     */
+    default void handleBatch(StripeAccount account, List<Event> events) {
+        RuntimeException failure = null;
+        for (Event event : events) {
+            try {
+                handle(account, event);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.stripe.webhook;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.account.StripeAccountRegistry;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives Stripe webhooks. The signature is verified and the event queued; the response is sent
+ * right away, so Stripe's connection is not held while the event is processed.
+ */
+@RestController
+public class WebhookController {
+
+    private final StripeAccountRegistry accountRegistry;
+
+    private final WebhookDispatcher dispatcher;
+
+    public WebhookController(StripeAccountRegistry accountRegistry, WebhookDispatcher dispatcher) {
+        this.accountRegistry = accountRegistry;
+        this.dispatcher = dispatcher;
+    }
+
+    @PostMapping("/webhooks/stripe")
+    ResponseEntity<String> receive(@RequestBody String payload,
+                                   @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+        return receive(accountRegistry.getDefaultAccount(), payload, signature);
+    }
+
+    // Stripe cannot send custom headers, so other accounts post to their own path
+    @PostMapping("/webhooks/stripe/{accountId}")
+    ResponseEntity<String> receive(@PathVariable String accountId,
+                                   @RequestBody String payload,
+                                   @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+        return receive(accountRegistry.resolve(accountId), payload, signature);
+    }
+
+    private ResponseEntity<String> receive(StripeAccount account, String payload, String signature) {
+        if (account.getWebhookSecret().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Webhooks are not configured for this account");
+        }
+        if (signature == null) {
+            return ResponseEntity.badRequest().body("Missing Stripe-Signature header");
+        }
+
+        Event event;
+        try {
+            event = Webhook.constructEvent(payload, signature, account.getWebhookSecret());
+        } catch (SignatureVerificationException e) {
+            return ResponseEntity.badRequest().body("Invalid signature");
+        }
+
+        // When the queue is full Stripe retries the delivery later with backoff
+        if (!dispatcher.offer(account, event)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Busy, retry later");
+        }
+        return ResponseEntity.ok("");
+    }
+}
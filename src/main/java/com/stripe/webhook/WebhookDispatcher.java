@@ -0,0 +1,188 @@
+package com.stripe.webhook;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.stripe.account.StripeAccount;
+import com.stripe.model.Event;
+import com.stripe.utils.TtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues webhook events in memory and hands them to the {@link StripeEventHandler}s in batches
+ * of up to {@code batch-size} events, see {@link StripeEventHandler#handleBatch}.
+ * Events are partitioned by the id of the object they describe, and each partition is drained by
+ * a single worker thread, which keeps per-object ordering without any locking in the handlers.
+ */
+@Component
+public class WebhookDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+    private static class QueuedEvent {
+        final StripeAccount account;
+        final Event event;
+
+        QueuedEvent(StripeAccount account, Event event) {
+            this.account = account;
+            this.event = event;
+        }
+    }
+
+    private final List<StripeEventHandler> handlers;
+    private final List<BlockingQueue<QueuedEvent>> partitions = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final int batchSize;
+
+    // Stripe delivers at least once; ids seen recently are dropped
+    private final TtlCache<String, Boolean> seenEventIds;
+
+    private final Counter accepted;
+    private final Counter duplicates;
+    private final Counter rejected;
+
+    private volatile boolean running = true;
+
+    public WebhookDispatcher(List<StripeEventHandler> handlers,
+                             MeterRegistry meterRegistry,
+                             @Value("${stripe.webhook.workers:4}") int workers,
+                             @Value("${stripe.webhook.queue-capacity:10000}") int queueCapacity,
+                             @Value("${stripe.webhook.batch-size:100}") int batchSize,
+                             @Value("${stripe.webhook.dedup-ttl-hours:24}") long dedupTtlHours,
+                             @Value("${stripe.webhook.dedup-max-size:200000}") int dedupMaxSize) {
+        this.handlers = handlers;
+        this.batchSize = batchSize;
+        this.seenEventIds = new TtlCache<>(dedupTtlHours, TimeUnit.HOURS, dedupMaxSize);
+
+        int partitionCapacity = Math.max(1, queueCapacity / workers);
+        for (int i = 0; i < workers; i++) {
+            partitions.add(new ArrayBlockingQueue<>(partitionCapacity));
+        }
+
+        this.accepted = Counter.builder("stripe.webhook.events").tag("result", "accepted").register(meterRegistry);
+        this.duplicates = Counter.builder("stripe.webhook.events").tag("result", "duplicate").register(meterRegistry);
+        this.rejected = Counter.builder("stripe.webhook.events").tag("result", "rejected").register(meterRegistry);
+        Gauge.builder("stripe.webhook.queue.size", partitions, queues -> queues.stream().mapToInt(BlockingQueue::size).sum())
+                .description("Webhook events waiting to be processed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < partitions.size(); i++) {
+            BlockingQueue<QueuedEvent> queue = partitions.get(i);
+            Thread worker = new Thread(() -> drain(queue), "stripe-webhook-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Queues the event for processing.
+     *
+     * @return false if the queue is full, so the sender should retry later
+     */
+    public boolean offer(StripeAccount account, Event event) {
+        String eventKey = account.getId() + ':' + event.getId();
+        if (seenEventIds.getIfPresent(eventKey) != null) {
+            duplicates.increment();
+            return true;
+        }
+
+        BlockingQueue<QueuedEvent> queue = partitions.get(Math.floorMod(objectId(event).hashCode(), partitions.size()));
+        if (!queue.offer(new QueuedEvent(account, event))) {
+            rejected.increment();
+            return false;
+        }
+
+        if (!seenEventIds.putIfAbsent(eventKey, Boolean.TRUE)) {
+            // A concurrent delivery of the same event got queued as well; handlers see it twice at worst
+            duplicates.increment();
+        } else {
+            accepted.increment();
+        }
+        return true;
+    }
+
+    private void drain(BlockingQueue<QueuedEvent> queue) {
+        List<QueuedEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                QueuedEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch(List<QueuedEvent> batch) {
+        // Handlers get the events of each account together, in the order they were queued
+        Map<StripeAccount, List<Event>> byAccount = new LinkedHashMap<>();
+        for (QueuedEvent queued : batch) {
+            byAccount.computeIfAbsent(queued.account, account -> new ArrayList<>()).add(queued.event);
+        }
+
+        for (Map.Entry<StripeAccount, List<Event>> events : byAccount.entrySet()) {
+            for (StripeEventHandler handler : handlers) {
+                try {
+                    handler.handleBatch(events.getKey(), events.getValue());
+                } catch (RuntimeException e) {
+                    // The events are already acknowledged; one failing handler must not block the partition
+                    log.error("Handler {} failed for a batch of {} events of {}", handler.getClass().getSimpleName(),
+                            events.getValue().size(), events.getKey(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the id of the object the event is about, falling back to the event id
+     */
+    static String objectId(Event event) {
+        try {
+            String rawJson = event.getDataObjectDeserializer().getRawJson();
+            if (rawJson != null) {
+                JsonObject object = JsonParser.parseString(rawJson).getAsJsonObject();
+                JsonElement id = object.get("id");
+                if (id != null && !id.isJsonNull()) {
+                    return id.getAsString();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.debug("Could not read the object id of event {}", event.getId(), e);
+        }
+        return event.getId();
+    }
+}
@@ -0,0 +1,134 @@
+package com.stripe;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.model.Customer;
+import com.stripe.net.ApiResource;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.transport.PooledHttpClient;
+import com.stripe.transport.StripeHttpProperties;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CustomerBatchResolverTest {
+
+    private static final Pattern EMAIL_CLAUSE = Pattern.compile("email:'([^']*)'");
+
+    private static final StripeAccount ACCOUNT = new StripeAccount("default", "pk_test_123", "sk_test_123", "");
+
+    private HttpServer server;
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    @BeforeEach
+    public void startMockStripe() throws IOException {
+        // Answers every search with a customer for each email in the query, except unknown@example.com
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/customers/search", exchange -> {
+            searches.incrementAndGet();
+            String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+            List<String> customers = new ArrayList<>();
+            Matcher matcher = EMAIL_CLAUSE.matcher(query);
+            while (matcher.find()) {
+                if (!matcher.group(1).equals("unknown@example.com")) {
+                    customers.add("{\"id\":\"cus_" + matcher.group(1).hashCode() + "\",\"object\":\"customer\",\"email\":\""
+                            + matcher.group(1) + "\"}");
+                }
+            }
+            byte[] body = ("{\"object\":\"search_result\",\"url\":\"/v1/customers/search\",\"has_more\":false,\"data\":["
+                    + String.join(",", customers) + "]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        Stripe.overrideApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter(new PooledHttpClient(new StripeHttpProperties())));
+    }
+
+    @AfterEach
+    public void stopMockStripe() {
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter());
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+        server.stop(0);
+    }
+
+    @Test
+    public void combinesConcurrentLookupsIntoOneSearch() throws Exception {
+        CustomerBatchResolver resolver = new CustomerBatchResolver(200, 10, new SimpleMeterRegistry());
+        String[] emails = {"a@example.com", "B@example.com", "c@example.com", "unknown@example.com"};
+
+        ExecutorService executor = Executors.newFixedThreadPool(emails.length);
+        try {
+            List<CompletableFuture<Customer>> results = new ArrayList<>();
+            for (String email : emails) {
+                results.add(lookUp(executor, resolver, email));
+            }
+
+            assertEquals("a@example.com", results.get(0).get().getEmail());
+            assertEquals("b@example.com", results.get(1).get().getEmail());
+            assertEquals("c@example.com", results.get(2).get().getEmail());
+            assertNull(results.get(3).get());
+            assertEquals(1, searches.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void runsAFullBatchRightAway() throws Exception {
+        // With a window this long, only a full batch can complete within the test
+        CustomerBatchResolver resolver = new CustomerBatchResolver(60_000, 2, new SimpleMeterRegistry());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Customer> first = lookUp(executor, resolver, "a@example.com");
+            CompletableFuture<Customer> second = lookUp(executor, resolver, "b@example.com");
+
+            assertEquals("a@example.com", first.get(10, TimeUnit.SECONDS).getEmail());
+            assertEquals("b@example.com", second.get(10, TimeUnit.SECONDS).getEmail());
+            assertEquals(1, searches.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void escapesQuotesInEmails() {
+        assertEquals("email:'a@example.com' OR email:'o\\'brien@example.com'",
+                CustomerBatchResolver.query(List.of("a@example.com", "o'brien@example.com")));
+    }
+
+    private static CompletableFuture<Customer> lookUp(ExecutorService executor, CustomerBatchResolver resolver, String email) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return resolver.find(ACCOUNT, email);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,130 @@
+package com.stripe.loadtest;
+
+import com.stripe.Stripe;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throughput of the checkout and list endpoints against {@link MockStripeServer}, at increasing
+ * concurrency. Excluded from the normal build; run with
+ * <pre>
+ * mvn -Pload-test test -Dloadtest.concurrency=1,8,32,128 -Dloadtest.stripe-latency-ms=50
+ * </pre>
+ * Results are printed and written to target/load-test/results-${loadtest.label}.csv, so runs of
+ * different builds can be compared. Other settings: loadtest.step-seconds, loadtest.warmup-seconds,
+ * loadtest.customers (distinct customer emails, 0 = a new one per request), loadtest.stripe-jitter-ms,
+ * loadtest.stripe-error-rate and loadtest.stripe-429-rate.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "stripe.key.secret=sk_test_load",
+        "stripe.key.public=pk_test_load",
+        "stripe.key.webhook=",
+        // Slow traces are expected when the concurrency exceeds the connection pool
+        "logging.level.com.stripe.metrics.TraceRecorder=ERROR"
+})
+public class EndpointLoadTest {
+
+    private static final MockStripeServer stripe = MockStripeServer.start(MockStripeServer.Settings.fromSystemProperties());
+
+    private static final List<LoadDriver.Result> results = new CopyOnWriteArrayList<>();
+
+    private static final int[] CONCURRENCY = Arrays.stream(System.getProperty("loadtest.concurrency", "1,8,32,128").split(","))
+            .mapToInt(level -> Integer.parseInt(level.trim()))
+            .toArray();
+
+    private static final Duration STEP = Duration.ofSeconds(Long.getLong("loadtest.step-seconds", 10));
+
+    private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("loadtest.warmup-seconds", 5));
+
+    private static final long CUSTOMERS = Long.getLong("loadtest.customers", 0);
+
+    @DynamicPropertySource
+    static void pointAtMockStripe(DynamicPropertyRegistry registry) {
+        registry.add("stripe.http.api-base", stripe::baseUrl);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @AfterAll
+    static void writeResults() throws IOException {
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+        stripe.stop();
+
+        List<String> lines = new ArrayList<>();
+        lines.add(LoadDriver.CSV_HEADER);
+        for (LoadDriver.Result result : results) {
+            lines.add(result.toCsv());
+        }
+        Path file = Path.of("target", "load-test", "results-" + System.getProperty("loadtest.label", "current") + ".csv");
+        Files.createDirectories(file.getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        System.out.println("Load test results written to " + file.toAbsolutePath());
+    }
+
+    @Test
+    public void hostedCheckout() throws InterruptedException {
+        drive("/checkout/hosted", n -> "{\"customerEmail\":\"" + email(n) + "\",\"customerName\":\"Load Test\","
+                + "\"items\":[{\"id\":\"shoe\",\"quantity\":2},{\"id\":\"music\"}]}");
+    }
+
+    @Test
+    public void integratedCheckout() throws InterruptedException {
+        drive("/checkout/integrated", n -> "{\"customerEmail\":\"" + email(n) + "\",\"customerName\":\"Load Test\","
+                + "\"items\":[{\"id\":\"shoe\",\"quantity\":2},{\"id\":\"music\"}]}");
+    }
+
+    @Test
+    public void listSubscriptions() throws InterruptedException {
+        drive("/subscriptions/list", n -> "{\"customerEmail\":\"" + email(n) + "\"}");
+    }
+
+    @Test
+    public void listInvoices() throws InterruptedException {
+        drive("/invoices/list", n -> "{\"customerEmail\":\"" + email(n) + "\"}");
+    }
+
+    private void drive(String endpoint, LongFunction<String> body) throws InterruptedException {
+        LoadDriver driver = new LoadDriver("http://127.0.0.1:" + port, endpoint, body, stripe);
+
+        // Warms up the JIT and the connection pools at the highest level, without recording it
+        driver.run(CONCURRENCY[CONCURRENCY.length - 1], WARMUP);
+
+        System.out.println("Mock Stripe: " + stripe.settings());
+        System.out.println(LoadDriver.HEADER);
+        for (int concurrency : CONCURRENCY) {
+            LoadDriver.Result result = driver.run(concurrency, STEP);
+            results.add(result);
+            System.out.println(result.toRow());
+
+            assertTrue(result.getRequests() > 0, endpoint + " completed no requests");
+            if (!stripe.settings().injectsErrors()) {
+                assertEquals(0, result.getFailures(), endpoint + " failed without injected Stripe errors");
+            }
+        }
+    }
+
+    private static String email(long n) {
+        return "load-" + (CUSTOMERS > 0 ? n % CUSTOMERS : n) + "@example.com";
+    }
+}
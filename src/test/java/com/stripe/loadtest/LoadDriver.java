@@ -0,0 +1,162 @@
+package com.stripe.loadtest;
+
+import lombok.Value;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Drives one endpoint with a fixed number of concurrent clients for a fixed time. Each client
+ * sends its next request as soon as the previous one completes (a closed loop), so throughput
+ * shows how many requests the app completes at that concurrency.
+ */
+public class LoadDriver {
+
+    @Value
+    public static class Result {
+        String endpoint;
+        int concurrency;
+        long requests;
+        long failures;
+        double throughput;
+        double p50Ms;
+        double p99Ms;
+        double stripeCallsPerRequest;
+
+        String toRow() {
+            return String.format("%-24s %11d %9d %8d %9.1f %8.1f %8.1f %9.2f",
+                    endpoint, concurrency, requests, failures, throughput, p50Ms, p99Ms, stripeCallsPerRequest);
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%.1f,%.2f,%.2f,%.2f",
+                    endpoint, concurrency, requests, failures, throughput, p50Ms, p99Ms, stripeCallsPerRequest);
+        }
+    }
+
+    static final String HEADER = String.format("%-24s %11s %9s %8s %9s %8s %8s %9s",
+            "endpoint", "concurrency", "requests", "failures", "req/s", "p50 ms", "p99 ms", "calls/req");
+
+    static final String CSV_HEADER = "endpoint,concurrency,requests,failures,throughput,p50_ms,p99_ms,stripe_calls_per_request";
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final String endpoint;
+    private final URI uri;
+    private final LongFunction<String> body;
+    private final MockStripeServer stripe;
+
+    // Numbers the requests of all steps, so bodies can vary per request (e.g. the customer email)
+    private final AtomicLong sequence = new AtomicLong();
+
+    public LoadDriver(String baseUrl, String endpoint, LongFunction<String> body, MockStripeServer stripe) {
+        this.endpoint = endpoint;
+        this.uri = URI.create(baseUrl + endpoint);
+        this.body = body;
+        this.stripe = stripe;
+    }
+
+    public Result run(int concurrency, Duration duration) throws InterruptedException {
+        long callsBefore = stripe.calls();
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+
+        List<Client> clients = new ArrayList<>(concurrency);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < concurrency; i++) {
+            Client client = new Client(deadline);
+            clients.add(client);
+            executor.execute(client);
+        }
+        executor.shutdown();
+        // Requests still in flight at the deadline are allowed to complete
+        executor.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long calls = stripe.calls() - callsBefore;
+
+        long failures = 0;
+        int count = 0;
+        for (Client client : clients) {
+            failures += client.failures;
+            count += client.count;
+        }
+        long[] latencies = new long[count];
+        int offset = 0;
+        for (Client client : clients) {
+            System.arraycopy(client.latencies, 0, latencies, offset, client.count);
+            offset += client.count;
+        }
+        Arrays.sort(latencies);
+
+        long requests = count + failures;
+        return new Result(endpoint, concurrency, requests, failures, requests / elapsedSeconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99),
+                requests > 0 ? (double) calls / requests : 0);
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = Math.max(0, (int) Math.ceil(p * sortedNanos.length) - 1);
+        return sortedNanos[index] / 1e6;
+    }
+
+    private class Client implements Runnable {
+        final long deadline;
+        // Latencies of the successful requests, in nanoseconds
+        long[] latencies = new long[1024];
+        int count;
+        long failures;
+
+        Client(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline) {
+                HttpRequest request = HttpRequest.newBuilder(uri)
+                        .header("Content-Type", "application/json")
+                        .timeout(Duration.ofSeconds(60))
+                        .POST(HttpRequest.BodyPublishers.ofString(body.apply(sequence.incrementAndGet())))
+                        .build();
+                long started = System.nanoTime();
+                try {
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() >= 400) {
+                        failures++;
+                        continue;
+                    }
+                } catch (IOException e) {
+                    failures++;
+                    continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - started;
+            }
+        }
+    }
+}
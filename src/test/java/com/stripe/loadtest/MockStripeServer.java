@@ -0,0 +1,199 @@
+package com.stripe.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Stripe API with the endpoints the checkout and list flows use. Every
+ * response is delayed by the configured latency, and a share of them can be turned into 500 or
+ * 429 errors. Each request is handled on its own virtual thread, so the latency does not limit
+ * how many calls the mock serves at once.
+ */
+public class MockStripeServer {
+
+    public static class Settings {
+        long latencyMs = 50;
+        long jitterMs = 20;
+        double errorRate;
+        double rateLimitRate;
+
+        /**
+         * Reads loadtest.stripe-latency-ms, loadtest.stripe-jitter-ms, loadtest.stripe-error-rate
+         * and loadtest.stripe-429-rate.
+         */
+        public static Settings fromSystemProperties() {
+            Settings settings = new Settings();
+            settings.latencyMs = Long.getLong("loadtest.stripe-latency-ms", settings.latencyMs);
+            settings.jitterMs = Long.getLong("loadtest.stripe-jitter-ms", settings.jitterMs);
+            settings.errorRate = Double.parseDouble(System.getProperty("loadtest.stripe-error-rate", "0"));
+            settings.rateLimitRate = Double.parseDouble(System.getProperty("loadtest.stripe-429-rate", "0"));
+            return settings;
+        }
+
+        public boolean injectsErrors() {
+            return errorRate > 0 || rateLimitRate > 0;
+        }
+
+        @Override
+        public String toString() {
+            return "latency " + latencyMs + " +/- " + jitterMs + " ms, errors " + errorRate + ", 429s " + rateLimitRate;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Settings settings;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong();
+
+    private MockStripeServer(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/v1/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static MockStripeServer start(Settings settings) {
+        try {
+            MockStripeServer mock = new MockStripeServer(settings);
+            mock.server.start();
+            return mock;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the mock Stripe server", e);
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    /**
+     * @return the number of API calls received so far
+     */
+    public long calls() {
+        return calls.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        calls.incrementAndGet();
+        try {
+            exchange.getRequestBody().readAllBytes();
+            pause();
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < settings.rateLimitRate) {
+                send(exchange, 429, error("rate_limit_error", "rate_limit", "Too many requests (injected)"));
+                return;
+            }
+            if (roll < settings.rateLimitRate + settings.errorRate) {
+                send(exchange, 500, error("api_error", null, "Internal error (injected)"));
+                return;
+            }
+
+            String body = respond(exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+            if (body == null) {
+                send(exchange, 404, error("invalid_request_error", "resource_missing", "No such resource"));
+            } else {
+                send(exchange, 200, body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String respond(String method, String path) {
+        long now = System.currentTimeMillis() / 1000;
+        long id = ids.incrementAndGet();
+
+        if ("GET".equals(method)) {
+            switch (path) {
+                case "/v1/customers/search":
+                    return "{\"object\":\"search_result\",\"url\":\"/v1/customers/search\",\"has_more\":false,\"data\":["
+                            + customer(id) + "]}";
+                case "/v1/subscriptions":
+                    return list("/v1/subscriptions", "{\"id\":\"sub_" + id + "\",\"object\":\"subscription\","
+                            + "\"start_date\":" + (now - 86_400) + ",\"current_period_end\":" + (now + 29 * 86_400) + ","
+                            + "\"items\":" + list("/v1/subscription_items", "{\"id\":\"si_" + id + "\","
+                            + "\"object\":\"subscription_item\",\"price\":{\"id\":\"price_shoe\",\"object\":\"price\","
+                            + "\"product\":\"prod_shoe\",\"currency\":\"usd\",\"unit_amount\":2000,"
+                            + "\"unit_amount_decimal\":\"2000\"}}") + "}");
+                case "/v1/invoices":
+                    return list("/v1/invoices", "{\"id\":\"in_" + id + "\",\"object\":\"invoice\",\"number\":\"LOAD-" + id
+                            + "\",\"total\":2000,\"invoice_pdf\":\"https://pay.stripe.com/invoice/in_" + id + "/pdf\"}");
+                case "/v1/products":
+                    return list("/v1/products", "{\"id\":\"prod_shoe\",\"object\":\"product\",\"name\":\"Puma Shoes\","
+                            + "\"metadata\":{\"app_id\":\"shoe\"}}");
+                case "/v1/coupons":
+                    return list("/v1/coupons", null);
+                default:
+                    return null;
+            }
+        }
+
+        switch (path) {
+            case "/v1/customers":
+                return customer(id);
+            case "/v1/checkout/sessions":
+                return "{\"id\":\"cs_test_" + id + "\",\"object\":\"checkout.session\","
+                        + "\"url\":\"https://checkout.stripe.com/c/pay/cs_test_" + id + "\"}";
+            case "/v1/payment_intents":
+                return "{\"id\":\"pi_" + id + "\",\"object\":\"payment_intent\",\"client_secret\":\"pi_" + id
+                        + "_secret_load\"}";
+            default:
+                return null;
+        }
+    }
+
+    private void pause() {
+        long delay = settings.latencyMs + (settings.jitterMs > 0 ? ThreadLocalRandom.current().nextLong(settings.jitterMs + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String customer(long id) {
+        return "{\"id\":\"cus_" + id + "\",\"object\":\"customer\",\"email\":\"load-" + id + "@example.com\"}";
+    }
+
+    private static String list(String url, String item) {
+        return "{\"object\":\"list\",\"url\":\"" + url + "\",\"has_more\":false,\"data\":[" + (item != null ? item : "") + "]}";
+    }
+
+    private static String error(String type, String code, String message) {
+        return "{\"error\":{\"type\":\"" + type + "\"," + (code != null ? "\"code\":\"" + code + "\"," : "")
+                + "\"message\":\"" + message + "\"}}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Request-Id", "req_load");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.stripe.pricing;
+
+import com.stripe.repository.Catalog;
+import com.stripe.repository.CatalogItem;
+import com.stripe.repository.HeapCatalog;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PricingEngineTest {
+
+    private final Catalog catalog = new HeapCatalog(Arrays.asList(
+            new CatalogItem("shoe", "Puma Shoes", 2000, "usd"),
+            new CatalogItem("music", "Apple Music+", 499, "usd"),
+            new CatalogItem("scarf", "Wool Scarf", 1999, "eur")
+    ));
+
+    @Test
+    public void totalsPerCurrencyWithQuantities() {
+        Quote quote = PricingEngine.quote(catalog, List.of(
+                new CartItem("shoe", null, 2),
+                new CartItem("scarf", null, 1),
+                new CartItem("music", null, 3)), null);
+
+        assertEquals(2, quote.currencyCount());
+        assertEquals("usd", quote.currency(0));
+        assertEquals(5497, quote.total(0));
+        assertEquals("eur", quote.currency(1));
+        assertEquals(1999, quote.total(1));
+    }
+
+    @Test
+    public void percentCouponRoundsHalfUpPerCurrency() {
+        // 12.5 % of 499 is 62.375 cents
+        Quote quote = PricingEngine.quote(catalog, List.of(new CartItem("music", null, 1)),
+                CouponTerms.percentOff(new BigDecimal("12.5")));
+
+        assertEquals(62, quote.discount(0));
+        assertEquals(437, quote.total(0));
+    }
+
+    @Test
+    public void amountCouponOnlyAppliesToItsCurrencyAndNeverGoesNegative() {
+        Quote quote = PricingEngine.quote(catalog, List.of(
+                new CartItem("music", null, 1),
+                new CartItem("scarf", null, 1)), CouponTerms.amountOff(1000, "USD"));
+
+        assertEquals(0, quote.total(0));
+        assertEquals(1999, quote.total(1));
+    }
+
+    @Test
+    public void arrayFastPathMatchesQuote() {
+        int lines = 5_000;
+        String[] ids = new String[lines];
+        long[] quantities = new long[lines];
+        for (int i = 0; i < lines; i++) {
+            ids[i] = i % 2 == 0 ? "shoe" : "music";
+            quantities[i] = i % 7 + 1;
+        }
+
+        long expected = 0;
+        for (int i = 0; i < lines; i++) {
+            expected += (i % 2 == 0 ? 2000L : 499L) * quantities[i];
+        }
+        assertEquals(expected, PricingEngine.total(catalog, ids, quantities, lines, "usd"));
+    }
+
+    @Test
+    public void rejectsInvalidCarts() {
+        assertThrows(InvalidCartException.class,
+                () -> PricingEngine.quote(catalog, List.of(new CartItem("shoe", null, 0)), null));
+        assertThrows(InvalidCartException.class,
+                () -> PricingEngine.total(catalog, new String[]{"scarf"}, new long[]{1}, 1, "usd"));
+        assertThrows(ArithmeticException.class,
+                () -> PricingEngine.quote(catalog, List.of(new CartItem("shoe", null, Long.MAX_VALUE / 1000)), null));
+        assertThrows(InvalidCartException.class,
+                () -> PricingEngine.quote(catalog, List.of(new CartItem("shoe", null, 1), new CartItem("scarf", null, 1)), null)
+                        .singleCurrency());
+    }
+}
@@ -0,0 +1,74 @@
+package com.stripe.readmodel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountProjectionTest {
+
+    private final AccountProjection projection = new AccountProjection();
+
+    private static SubscriptionView subscription(String id, String customerId, long created) {
+        return new SubscriptionView(id, customerId, created, created, created + 2592000, null,
+                List.of(new SubscriptionView.Item("prod_1", "999")));
+    }
+
+    @Test
+    public void aBackfillDoesNotUndoANewerEvent() {
+        // The backfill started at 100 and reads the customer only after an event at 150 changed it
+        projection.putCustomer("cus_1", new CustomerView("cus_1", "new@example.com", 10), 150);
+        projection.putCustomer("cus_1", new CustomerView("cus_1", "old@example.com", 10), 100);
+        projection.completeBackfill(100);
+
+        assertEquals("cus_1", projection.customerIdByEmail("NEW@example.com "));
+        assertNull(projection.customerIdByEmail("old@example.com"));
+    }
+
+    @Test
+    public void aBackfillDoesNotBringBackAnObjectDeletedMeanwhile() {
+        projection.putSubscription("sub_1", null, 150);
+        projection.putSubscription("sub_1", subscription("sub_1", "cus_1", 10), 100);
+        projection.completeBackfill(100);
+
+        assertTrue(projection.subscriptionsOf("cus_1").isEmpty());
+    }
+
+    @Test
+    public void completingABackfillDropsWhatItDidNotSee() {
+        projection.putInvoice("in_gone", new InvoiceView("in_gone", "cus_1", 10, "A-1", 999, null), 50);
+        projection.putInvoice("in_1", new InvoiceView("in_1", "cus_1", 20, "A-2", 999, null), 100);
+        projection.putInvoice("in_2", new InvoiceView("in_2", "cus_1", 30, "A-3", 999, null), 120);
+        assertFalse(projection.isReady());
+
+        projection.completeBackfill(100);
+
+        assertTrue(projection.isReady());
+        List<InvoiceView> invoices = projection.invoicesOf("cus_1");
+        assertEquals(2, invoices.size());
+        // Newest first
+        assertEquals("in_2", invoices.get(0).getId());
+        assertEquals("in_1", invoices.get(1).getId());
+    }
+
+    @Test
+    public void movesASubscriptionToItsNewCustomer() {
+        projection.putSubscription("sub_1", subscription("sub_1", "cus_1", 10), 100);
+        projection.putSubscription("sub_1", subscription("sub_1", "cus_2", 10), 110);
+
+        assertTrue(projection.subscriptionsOf("cus_1").isEmpty());
+        assertEquals(1, projection.subscriptionsOf("cus_2").size());
+    }
+
+    @Test
+    public void theOldestCustomerWinsForADuplicateEmail() {
+        projection.putCustomer("cus_new", new CustomerView("cus_new", "a@example.com", 20), 100);
+        projection.putCustomer("cus_old", new CustomerView("cus_old", "a@example.com", 10), 100);
+
+        assertEquals("cus_old", projection.customerIdByEmail("a@example.com"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.stripe.readmodel;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadModelStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void restoresAProjectionFromItsSnapshot() throws IOException {
+        AccountProjection projection = new AccountProjection();
+        projection.putCustomer("cus_1", new CustomerView("cus_1", "a@example.com", 10), 100);
+        projection.putCustomer("cus_gone", null, 120);
+        projection.putSubscription("sub_1", new SubscriptionView("sub_1", "cus_1", 10, 10, 2592010, 20L,
+                List.of(new SubscriptionView.Item("prod_1", "999.5"))), 100);
+        projection.putInvoice("in_1", new InvoiceView("in_1", "cus_1", 10, "A-1", 999, "https://example.com/in_1.pdf"), 100);
+        projection.completeBackfill(100);
+
+        ReadModelStore store = new ReadModelStore(dir.resolve("snapshots"));
+        store.save("eu", projection.exportIfDirty(store::serialize));
+        // Nothing changed since, so there is nothing to write
+        assertNull(projection.exportIfDirty(store::serialize));
+
+        AccountProjection restored = new AccountProjection();
+        restored.restore(store.load("eu"));
+
+        assertTrue(restored.isReady());
+        assertEquals("cus_1", restored.customerIdByEmail("a@example.com"));
+        SubscriptionView subscription = restored.subscriptionsOf("cus_1").get(0);
+        assertEquals(Long.valueOf(20), subscription.getTrialEnd());
+        assertEquals("999.5", subscription.getItems().get(0).getUnitAmountDecimal());
+        assertEquals("https://example.com/in_1.pdf", restored.invoicesOf("cus_1").get(0).getInvoicePdf());
+
+        // Versions survive the round trip, so an older backfill read still loses against the snapshot
+        restored.putCustomer("cus_1", new CustomerView("cus_1", "b@example.com", 10), 90);
+        assertEquals("cus_1", restored.customerIdByEmail("a@example.com"));
+        restored.putCustomer("cus_gone", new CustomerView("cus_gone", "gone@example.com", 5), 110);
+        assertNull(restored.customerIdByEmail("gone@example.com"));
+
+        assertFalse(Files.exists(dir.resolve("snapshots").resolve("eu.json.tmp")));
+    }
+
+    @Test
+    public void hasNothingToLoadForANewAccount() throws IOException {
+        assertNull(new ReadModelStore(dir).load("us"));
+    }
+}
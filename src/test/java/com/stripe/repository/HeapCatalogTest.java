@@ -0,0 +1,50 @@
+package com.stripe.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HeapCatalogTest {
+
+    private final HeapCatalog catalog = new HeapCatalog(List.of(
+            new CatalogItem("shoe", "Puma Shoes", 2000, "USD"),
+            new CatalogItem("music", "Apple Music+", 499, "usd"),
+            new CatalogItem("scarf", "Wool Scarf", 1999, "eur")));
+
+    @Test
+    public void findsProductsByIdInInputOrder() {
+        assertEquals(3, catalog.size());
+
+        int music = catalog.indexOf("music");
+        assertEquals(1, music);
+        assertEquals("music", catalog.id(music));
+        assertEquals("Apple Music+", catalog.name(music));
+        assertEquals(499, catalog.unitAmount(music));
+        assertEquals("usd", catalog.currency(music));
+    }
+
+    @Test
+    public void unknownIdsAreNotFound() {
+        assertEquals(-1, catalog.indexOf("hat"));
+        assertEquals(-1, catalog.indexOf("Shoe"));
+        assertEquals(-1, catalog.indexOf(""));
+    }
+
+    @Test
+    public void currenciesAreLowerCasedAndShared() {
+        // The pricing engine groups line items by currency reference
+        assertSame(catalog.currency(catalog.indexOf("music")), catalog.currency(catalog.indexOf("shoe")));
+        assertEquals("usd", catalog.currency(catalog.indexOf("shoe")));
+    }
+
+    @Test
+    public void rejectsDuplicateIds() {
+        assertThrows(IllegalArgumentException.class, () -> new HeapCatalog(List.of(
+                new CatalogItem("shoe", "Puma Shoes", 2000, "usd"),
+                new CatalogItem("shoe", "Nike Shoes", 2500, "usd"))));
+    }
+}
@@ -0,0 +1,106 @@
+package com.stripe.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MappedCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        Path file = dir.resolve("products.bin");
+        MappedCatalog.write(List.of(
+                new CatalogItem("shoe", "Puma Shoes", 2000, "USD"),
+                new CatalogItem("scarf", "Écharpe en laine", 1999, "eur"),
+                new CatalogItem("music", "Apple Music+", Long.MAX_VALUE, "usd")), file);
+
+        MappedCatalog catalog = MappedCatalog.open(file);
+
+        assertEquals(3, catalog.size());
+        int scarf = catalog.indexOf("scarf");
+        assertEquals(1, scarf);
+        assertEquals("scarf", catalog.id(scarf));
+        assertEquals("Écharpe en laine", catalog.name(scarf));
+        assertEquals(1999, catalog.unitAmount(scarf));
+        assertEquals("eur", catalog.currency(scarf));
+        assertEquals("usd", catalog.currency(catalog.indexOf("shoe")));
+        assertEquals(Long.MAX_VALUE, catalog.unitAmount(catalog.indexOf("music")));
+        // The temporary file was renamed into place
+        assertFalse(Files.exists(dir.resolve("products.bin.tmp")));
+    }
+
+    @Test
+    public void findsEveryIdDespiteHashCollisions() throws IOException {
+        // The hash table has at most twice as many slots as items, so many ids collide and are probed past
+        List<CatalogItem> items = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            items.add(new CatalogItem("p" + i, "Product " + i, i, "usd"));
+        }
+        Path file = dir.resolve("many.bin");
+        MappedCatalog.write(items, file);
+
+        MappedCatalog catalog = MappedCatalog.open(file);
+
+        for (int i = 0; i < 5000; i++) {
+            int index = catalog.indexOf("p" + i);
+            assertEquals(i, index);
+            assertEquals("p" + i, catalog.id(index));
+            assertEquals(i, catalog.unitAmount(index));
+        }
+        for (int i = 5000; i < 6000; i++) {
+            assertEquals(-1, catalog.indexOf("p" + i));
+        }
+    }
+
+    @Test
+    public void unknownIdsAreNotFound() throws IOException {
+        Path file = dir.resolve("products.bin");
+        MappedCatalog.write(List.of(
+                new CatalogItem("ab", "Short", 1, "usd"),
+                new CatalogItem("abcd", "Long", 2, "usd")), file);
+
+        MappedCatalog catalog = MappedCatalog.open(file);
+
+        // Ids are zero-padded to the longest id, prefixes and extensions must not match
+        assertEquals(0, catalog.indexOf("ab"));
+        assertEquals(1, catalog.indexOf("abcd"));
+        assertEquals(-1, catalog.indexOf("a"));
+        assertEquals(-1, catalog.indexOf("abc"));
+        assertEquals(-1, catalog.indexOf("abcde"));
+        assertEquals(-1, catalog.indexOf(""));
+        assertEquals(-1, catalog.indexOf(null));
+        assertThrows(IndexOutOfBoundsException.class, () -> catalog.id(2));
+    }
+
+    @Test
+    public void rejectsInvalidCatalogs() {
+        Path file = dir.resolve("products.bin");
+        assertThrows(IllegalArgumentException.class, () -> MappedCatalog.write(List.of(
+                new CatalogItem("shoe", "Puma Shoes", 2000, "usd"),
+                new CatalogItem("shoe", "Nike Shoes", 2500, "usd")), file));
+        assertThrows(IllegalArgumentException.class, () -> MappedCatalog.write(List.of(
+                new CatalogItem("chaussure-é", "Chaussure", 2000, "eur")), file));
+        assertThrows(IllegalArgumentException.class, () -> MappedCatalog.write(List.of(
+                new CatalogItem("shoe", "Puma Shoes", 2000, "dollars")), file));
+    }
+
+    @Test
+    public void refusesFilesInAnotherFormat() throws IOException {
+        Path file = dir.resolve("products.csv");
+        Files.writeString(file, "id,name,unitAmount,currency\nshoe,Puma Shoes,2000,usd\n");
+
+        assertThrows(IOException.class, () -> MappedCatalog.open(file));
+    }
+}
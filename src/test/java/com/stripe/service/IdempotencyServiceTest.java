@@ -0,0 +1,78 @@
+package com.stripe.service;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdempotencyServiceTest {
+
+    private static final StripeAccount EU = new StripeAccount("eu", "pk_test_eu", "sk_test_eu", "");
+    private static final StripeAccount US = new StripeAccount("us", "pk_test_us", "sk_test_us", "");
+
+    private final IdempotencyService service = new IdempotencyService(60, 100);
+
+    @Test
+    public void scopesClientKeysToAccountAndOperation() {
+        String key = service.key(EU, "order-42", "checkout");
+
+        assertEquals(key, service.key(EU, "order-42", "checkout"));
+        assertNotEquals(key, service.key(US, "order-42", "checkout"));
+        assertNotEquals(key, service.key(EU, "order-42", "payment-intent"));
+        // The content does not matter when the client names the call
+        assertEquals(key, service.key(EU, "order-42", "checkout", "shoe", 2));
+    }
+
+    @Test
+    public void hashesClientKeysStripeWouldReject() {
+        String longKey = "x".repeat(300);
+
+        String key = service.key(EU, longKey, "checkout");
+
+        assertTrue(key.length() <= 255);
+        assertEquals(key, service.key(EU, longKey, "checkout"));
+        assertNotEquals(key, service.key(EU, longKey + "y", "checkout"));
+    }
+
+    @Test
+    public void derivesTheSameKeyForTheSameContent() {
+        String key = service.key(EU, null, "checkout", "a@example.com", "shoe", 2);
+
+        assertEquals(key, service.key(EU, "", "checkout", "a@example.com", "shoe", 2));
+        assertNotEquals(key, service.key(EU, null, "checkout", "a@example.com", "shoe", 3));
+        assertNotEquals(key, service.key(US, null, "checkout", "a@example.com", "shoe", 2));
+        // Parts are separated, so moving a boundary changes the key
+        assertNotEquals(service.key(EU, null, "checkout", "ab", "c"), service.key(EU, null, "checkout", "a", "bc"));
+    }
+
+    @Test
+    public void derivesANewKeyOnceTheWindowHasPassed() throws InterruptedException {
+        IdempotencyService shortWindow = new IdempotencyService(1, 100);
+        String key = shortWindow.key(EU, null, "checkout", "a@example.com", "shoe", 2);
+
+        Thread.sleep(1100);
+
+        assertNotEquals(key, shortWindow.key(EU, null, "checkout", "a@example.com", "shoe", 2));
+    }
+
+    @Test
+    public void runsACallOncePerKeyButRetriesFailures() throws StripeException {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(ApiConnectionException.class, () -> service.execute("k", () -> {
+            calls.incrementAndGet();
+            throw new ApiConnectionException("Stripe is down");
+        }));
+        assertEquals("cs_2", service.execute("k", () -> "cs_" + calls.incrementAndGet()));
+        assertEquals("cs_2", service.execute("k", () -> "cs_" + calls.incrementAndGet()));
+
+        assertEquals(2, calls.get());
+    }
+}
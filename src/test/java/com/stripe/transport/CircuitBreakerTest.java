@@ -0,0 +1,100 @@
+package com.stripe.transport;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static IsolationProperties properties(int openSeconds) {
+        IsolationProperties properties = new IsolationProperties();
+        properties.setWindowSize(10);
+        properties.setMinimumCalls(4);
+        properties.setFailureRatePercent(50);
+        properties.setOpenSeconds(openSeconds);
+        properties.setHalfOpenCalls(2);
+        return properties;
+    }
+
+    @Test
+    public void opensWhenTooManyRecentCallsFailed() {
+        CircuitBreaker breaker = new CircuitBreaker("search", properties(30));
+
+        for (boolean failed : new boolean[]{false, true, false}) {
+            assertTrue(breaker.tryAcquire());
+            breaker.record(failed);
+        }
+        // Below the minimum number of calls
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.record(true);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrialCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("search", properties(0));
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.record(true);
+        }
+
+        // With no open time, the next call is a trial call; only two are let through
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        breaker.record(false);
+        breaker.record(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void reopensWhenATrialCallFails() {
+        CircuitBreaker breaker = new CircuitBreaker("search", properties(0));
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.record(true);
+        }
+
+        assertTrue(breaker.tryAcquire());
+        breaker.record(true);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    public void cancelledTrialCallsDoNotUseUpTheTrial() {
+        CircuitBreaker breaker = new CircuitBreaker("search", properties(0));
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.record(true);
+        }
+
+        // Rejected by the rate limiter before reaching Stripe
+        assertTrue(breaker.tryAcquire());
+        breaker.cancel();
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    @Test
+    public void groupsOperations() {
+        assertEquals(IsolatingHttpClient.SEARCH, IsolatingHttpClient.group("Customer.search"));
+        assertEquals(IsolatingHttpClient.PAYMENTS, IsolatingHttpClient.group("Charge.create"));
+        assertEquals(IsolatingHttpClient.CHECKOUT, IsolatingHttpClient.group("Session.create"));
+        assertEquals(IsolatingHttpClient.INVOICING, IsolatingHttpClient.group("Invoice.finalizeInvoice"));
+        assertEquals(IsolatingHttpClient.SUBSCRIPTIONS, IsolatingHttpClient.group("Subscription.list"));
+        assertEquals(IsolatingHttpClient.OTHER, IsolatingHttpClient.group("Customer.create"));
+        assertEquals(IsolatingHttpClient.OTHER, IsolatingHttpClient.group("unknown"));
+    }
+}
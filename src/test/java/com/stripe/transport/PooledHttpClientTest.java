@@ -0,0 +1,62 @@
+package com.stripe.transport;
+
+import com.stripe.Stripe;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.net.ApiResource;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.net.RequestOptions;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PooledHttpClientTest {
+
+    private HttpServer server;
+
+    private final AtomicReference<String> authorization = new AtomicReference<>();
+
+    @BeforeEach
+    public void startMockStripe() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/customers/cus_123", exchange -> {
+            authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            byte[] body = "{\"id\":\"cus_123\",\"object\":\"customer\",\"email\":\"jane@example.com\"}"
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        Stripe.overrideApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter(new PooledHttpClient(new StripeHttpProperties())));
+    }
+
+    @AfterEach
+    public void stopMockStripe() {
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter());
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+        server.stop(0);
+    }
+
+    @Test
+    public void sendsRequestsThroughThePool() throws StripeException {
+        Customer customer = Customer.retrieve("cus_123", RequestOptions.builder().setApiKey("sk_test_123").build());
+
+        assertEquals("cus_123", customer.getId());
+        assertEquals("jane@example.com", customer.getEmail());
+        assertEquals("Bearer sk_test_123", authorization.get());
+    }
+}
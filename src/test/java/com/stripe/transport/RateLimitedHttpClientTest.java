@@ -0,0 +1,113 @@
+package com.stripe.transport;
+
+import com.stripe.Stripe;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.net.ApiResource;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.net.RequestOptions;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RateLimitedHttpClientTest {
+
+    private static final RequestOptions OPTIONS = RequestOptions.builder().setApiKey("sk_test_123").build();
+
+    private HttpServer server;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // Number of requests still to be answered with 429
+    private final AtomicInteger throttled = new AtomicInteger();
+
+    @BeforeEach
+    public void startMockStripe() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/customers/cus_123", exchange -> {
+            requests.incrementAndGet();
+            boolean limited = throttled.getAndDecrement() > 0;
+            byte[] body = (limited
+                    ? "{\"error\":{\"type\":\"invalid_request_error\",\"code\":\"rate_limit\",\"message\":\"Too many requests\"}}"
+                    : "{\"id\":\"cus_123\",\"object\":\"customer\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(limited ? 429 : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setRetryBaseMs(10);
+        properties.setRetryMaxMs(50);
+
+        Stripe.overrideApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter(new RateLimitedHttpClient(
+                new PooledHttpClient(new StripeHttpProperties()), properties, new SimpleMeterRegistry())));
+    }
+
+    @AfterEach
+    public void stopMockStripe() {
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter());
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+        server.stop(0);
+    }
+
+    @Test
+    public void retriesThrottledCalls() throws StripeException {
+        throttled.set(2);
+
+        Customer customer = Customer.retrieve("cus_123", OPTIONS);
+
+        assertEquals("cus_123", customer.getId());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() {
+        throttled.set(100);
+
+        StripeException e = assertThrows(StripeException.class, () -> Customer.retrieve("cus_123", OPTIONS));
+
+        assertEquals(429, e.getStatusCode());
+        assertEquals(new RateLimitProperties().getMaxRetries() + 1, requests.get());
+    }
+
+    @Test
+    public void shrinksConcurrencyLimitOncePerBurstOfThrottledCalls() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(16, 2, 64, TimeUnit.SECONDS.toNanos(1));
+
+        long first = limit.acquire(0);
+        long second = limit.acquire(0);
+        limit.release(first, true);
+        limit.release(second, true);
+
+        // Both calls started under the old limit, so only one decrease applies
+        assertEquals(11, limit.limit());
+        assertEquals(0, limit.inFlight());
+    }
+
+    @Test
+    public void cancelledReservationsGiveTheirTokenBack() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(-1, bucket.reserve(0));
+
+        bucket.cancel();
+        assertEquals(0, bucket.reserve(0));
+    }
+}
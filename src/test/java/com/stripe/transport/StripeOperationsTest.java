@@ -0,0 +1,23 @@
+package com.stripe.transport;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StripeOperationsTest {
+
+    @Test
+    public void namesRequestsAfterSdkMethods() {
+        assertEquals("Customer.search", StripeOperations.name("GET", "/v1/customers/search"));
+        assertEquals("Customer.create", StripeOperations.name("POST", "/v1/customers"));
+        assertEquals("Customer.retrieve", StripeOperations.name("GET", "/v1/customers/cus_123"));
+        assertEquals("Session.create", StripeOperations.name("POST", "/v1/checkout/sessions"));
+        assertEquals("InvoiceItem.create", StripeOperations.name("POST", "/v1/invoiceitems"));
+        assertEquals("InvoiceItem.delete", StripeOperations.name("DELETE", "/v1/invoiceitems/ii_123"));
+        assertEquals("Invoice.finalize", StripeOperations.name("POST", "/v1/invoices/in_123/finalize"));
+        assertEquals("Invoice.list", StripeOperations.name("GET", "/v1/invoices"));
+        assertEquals("SubscriptionItem.list", StripeOperations.name("GET", "/v1/subscription_items"));
+        assertEquals("Subscription.delete", StripeOperations.name("DELETE", "/v1/subscriptions/sub_123"));
+        assertEquals("Property.list", StripeOperations.name("GET", "/v1/properties"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.stripe.webhook;
+
+import com.stripe.account.StripeAccount;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WebhookDispatcherTest {
+
+    private static final StripeAccount ACCOUNT = new StripeAccount("default", "pk_test", "sk_test", "whsec_test");
+
+    // Object id -> ids of the events received about it, in the order they arrived
+    private final Map<String, List<String>> received = new ConcurrentHashMap<>();
+
+    private CountDownLatch expected = new CountDownLatch(0);
+
+    private final StripeEventHandler recorder = (account, event) -> {
+        received.computeIfAbsent(WebhookDispatcher.objectId(event), id -> new ArrayList<>()).add(event.getId());
+        expected.countDown();
+    };
+
+    private WebhookDispatcher dispatcher;
+
+    private WebhookDispatcher start(int workers, int batchSize) {
+        dispatcher = new WebhookDispatcher(List.of(recorder), new SimpleMeterRegistry(), workers, 10000, batchSize, 1, 1000);
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    @AfterEach
+    public void stop() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    private static Event event(String id, String objectId) {
+        return ApiResource.GSON.fromJson("{\"id\":\"" + id + "\",\"object\":\"event\",\"type\":\"customer.updated\","
+                + "\"created\":1700000000,\"data\":{\"object\":{\"id\":\"" + objectId + "\",\"object\":\"customer\"}}}", Event.class);
+    }
+
+    @Test
+    public void handlesARedeliveredEventOnce() throws InterruptedException {
+        start(2, 10);
+        expected = new CountDownLatch(2);
+
+        assertTrue(dispatcher.offer(ACCOUNT, event("evt_1", "cus_1")));
+        // Stripe delivers at least once; the redelivery is acknowledged but not handled again
+        assertTrue(dispatcher.offer(ACCOUNT, event("evt_1", "cus_1")));
+        assertTrue(dispatcher.offer(ACCOUNT, event("evt_2", "cus_1")));
+
+        assertTrue(expected.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(List.of("evt_1", "evt_2"), received.get("cus_1"));
+    }
+
+    @Test
+    public void keepsTheOrderOfEventsAboutTheSameObject() throws InterruptedException {
+        start(4, 7);
+        int objects = 20;
+        int eventsPerObject = 50;
+        expected = new CountDownLatch(objects * eventsPerObject);
+
+        for (int i = 0; i < eventsPerObject; i++) {
+            for (int o = 0; o < objects; o++) {
+                assertTrue(dispatcher.offer(ACCOUNT, event("evt_" + o + "_" + i, "cus_" + o)));
+            }
+        }
+
+        assertTrue(expected.await(5, TimeUnit.SECONDS));
+        for (int o = 0; o < objects; o++) {
+            List<String> events = received.get("cus_" + o);
+            assertEquals(eventsPerObject, events.size());
+            for (int i = 0; i < eventsPerObject; i++) {
+                assertEquals("evt_" + o + "_" + i, events.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void fallsBackToTheEventIdForEventsWithoutAnObjectId() {
+        Event event = ApiResource.GSON.fromJson("{\"id\":\"evt_3\",\"object\":\"event\",\"type\":\"balance.available\","
+                + "\"created\":1700000000,\"data\":{\"object\":{\"object\":\"balance\"}}}", Event.class);
+
+        assertEquals("evt_3", WebhookDispatcher.objectId(event));
+    }
+}